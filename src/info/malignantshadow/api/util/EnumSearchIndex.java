@@ -0,0 +1,366 @@
+package info.malignantshadow.api.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import info.malignantshadow.api.util.aliases.Aliasable;
+import info.malignantshadow.api.util.aliases.Nameable;
+
+/**
+ * An index of the names and aliases of the constants of an enum, so that {@link StringUtil#lenientEnumSearch(Class, String) lenient enum
+ * searches} don't need to test every name. There is one index per enum, built the first time it is searched.
+ * 
+ * <p>
+ * Equality is answered by hashing, {@code ^}, {@code %}, {@code *}, {@code $}, {@code <} and {@code >} by binary searches in sorted
+ * (and, for suffixes, reversed) names, and {@code ~} by an index of the substrings of up to {@value #GRAM} characters of every name. Longer
+ * {@code ~} patterns are only tested against the names that contain their rarest substring, and {@code #} globs (if they are enabled)
+ * against the names that start with their literal prefix.
+ * </p>
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ * @param <E>
+ *            The type of enum
+ */
+class EnumSearchIndex<E extends Enum<E>> {
+	
+	private static final int GRAM = 3;
+	
+	private static final ClassValue<EnumSearchIndex<?>> INDEXES = new ClassValue<EnumSearchIndex<?>>() {
+		
+		@Override
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		protected EnumSearchIndex<?> computeValue(Class<?> type) {
+			return new EnumSearchIndex(type);
+		}
+		
+	};
+	
+	private E[] _constants;
+	private String[] _keys, _foldedKeys;
+	private int[] _owners, _keyCounts;
+	private BitSet _nullNamed;
+	private Map<String, int[]> _exact, _folded;
+	private Map<Long, int[]> _grams;
+	private Sorted _sorted, _sortedFolded, _reversed, _reversedFolded;
+	
+	private EnumSearchIndex(Class<E> type) {
+		_constants = type.getEnumConstants();
+		_keyCounts = new int[_constants.length];
+		_nullNamed = new BitSet(_constants.length);
+		List<String> keys = new ArrayList<String>();
+		List<Integer> owners = new ArrayList<Integer>();
+		for (E e : _constants) {
+			List<String> names = getNames(e);
+			for (String name : names) {
+				if (name == null) { // null only matches a null test string
+					_nullNamed.set(e.ordinal());
+					continue;
+				}
+				
+				keys.add(name);
+				owners.add(e.ordinal());
+				_keyCounts[e.ordinal()]++;
+			}
+		}
+		
+		int size = keys.size();
+		_keys = keys.toArray(new String[size]);
+		_foldedKeys = new String[size];
+		_owners = new int[size];
+		String[] reversed = new String[size], reversedFolded = new String[size];
+		Map<String, List<Integer>> exact = new HashMap<String, List<Integer>>(), folded = new HashMap<String, List<Integer>>();
+		Map<Long, List<Integer>> grams = new HashMap<Long, List<Integer>>();
+		for (int i = 0; i < size; i++) {
+			_owners[i] = owners.get(i);
+			_foldedKeys[i] = StringUtil.foldCase(_keys[i]);
+			reversed[i] = reverse(_keys[i]);
+			reversedFolded[i] = reverse(_foldedKeys[i]);
+			add(exact, _keys[i], i);
+			add(folded, _foldedKeys[i], i);
+			
+			Set<Long> keyGrams = new HashSet<Long>();
+			for (int length = 1; length <= GRAM; length++)
+				for (int j = 0; j + length <= _foldedKeys[i].length(); j++)
+					keyGrams.add(gram(_foldedKeys[i], j, length));
+			for (Long gram : keyGrams)
+				add(grams, gram, i);
+		}
+		
+		_exact = toArrays(exact);
+		_folded = toArrays(folded);
+		_grams = toArrays(grams);
+		_sorted = new Sorted(_keys);
+		_sortedFolded = new Sorted(_foldedKeys);
+		_reversed = new Sorted(reversed);
+		_reversedFolded = new Sorted(reversedFolded);
+	}
+	
+	/**
+	 * Get the index for the given enum.
+	 * 
+	 * @param type
+	 *            The class of the enum
+	 * @return The index.
+	 */
+	@SuppressWarnings("unchecked")
+	static <E extends Enum<E>> EnumSearchIndex<E> of(Class<E> type) {
+		return (EnumSearchIndex<E>) INDEXES.get(type);
+	}
+	
+	/**
+	 * Get the names of the given constant that are searched, in the order {@link StringUtil#lenientEnumSearch(Enum[], String)} tests them:
+	 * its {@link Enum#name() name}, its {@link Nameable#getName() Nameable name} and its {@link Aliasable#getAliases() aliases}.
+	 * 
+	 * @param e
+	 *            The constant
+	 * @return The names, which may contain {@code null}.
+	 */
+	static List<String> getNames(Enum<?> e) {
+		List<String> names = new ArrayList<String>();
+		names.add(e.name());
+		if (e instanceof Nameable) {
+			names.add(((Nameable) e).getName());
+			if (e instanceof Aliasable) {
+				String[] aliases = ((Aliasable) e).getAliases();
+				if (aliases != null)
+					names.addAll(Arrays.asList(aliases));
+			}
+		}
+		return names;
+	}
+	
+	private static <K> void add(Map<K, List<Integer>> map, K key, int id) {
+		List<Integer> ids = map.get(key);
+		if (ids == null)
+			map.put(key, ids = new ArrayList<Integer>(1));
+		ids.add(id);
+	}
+	
+	private static <K> Map<K, int[]> toArrays(Map<K, List<Integer>> map) {
+		Map<K, int[]> arrays = new HashMap<K, int[]>(map.size() * 4 / 3 + 1);
+		for (Map.Entry<K, List<Integer>> e : map.entrySet()) {
+			List<Integer> ids = e.getValue();
+			int[] array = new int[ids.size()];
+			for (int i = 0; i < array.length; i++)
+				array[i] = ids.get(i);
+			arrays.put(e.getKey(), array);
+		}
+		return arrays;
+	}
+	
+	private static String reverse(String s) {
+		return new StringBuilder(s).reverse().toString();
+	}
+	
+	// up to GRAM chars, 16 bits each, with the length above them
+	private static long gram(String s, int from, int length) {
+		long gram = length;
+		for (int i = from; i < from + length; i++)
+			gram = gram << 16 | s.charAt(i);
+		return gram;
+	}
+	
+	/**
+	 * Get the constant with the given ordinal.
+	 * 
+	 * @param ordinal
+	 *            The ordinal
+	 * @return The constant.
+	 */
+	E get(int ordinal) {
+		return _constants[ordinal];
+	}
+	
+	/**
+	 * Get the amount of constants of the enum.
+	 * 
+	 * @return The amount of constants.
+	 */
+	int size() {
+		return _constants.length;
+	}
+	
+	/**
+	 * Find the constants that have a name (or alias) that leniently matches the given test string.
+	 * 
+	 * @param test
+	 *            The test string
+	 * @return The ordinals of the matching constants.
+	 */
+	BitSet search(String test) {
+		return search(test, false);
+	}
+	
+	/**
+	 * Find the constants that have a name (or alias) that leniently matches the given test string.
+	 * 
+	 * @param test
+	 *            The test string
+	 * @param globs
+	 *            {@code true} if a leading {@code #} makes the test string a glob
+	 * @return The ordinals of the matching constants.
+	 */
+	BitSet search(String test, boolean globs) {
+		if (test == null)
+			return (BitSet) _nullNamed.clone();
+		
+		LenientMatcher m = LenientMatcher.compile(test, globs);
+		BitSet keys = new BitSet(_keys.length);
+		matchKeys(m.getOperator(), m.getPattern(), keys);
+		
+		BitSet found = new BitSet(_constants.length);
+		if (!m.isNegated()) {
+			for (int k = keys.nextSetBit(0); k >= 0; k = keys.nextSetBit(k + 1))
+				found.set(_owners[k]);
+			return found;
+		}
+		
+		// a negated test matches a constant unless every one of its names matches the test without negation
+		int[] matched = new int[_constants.length];
+		for (int k = keys.nextSetBit(0); k >= 0; k = keys.nextSetBit(k + 1))
+			matched[_owners[k]]++;
+		for (int i = 0; i < matched.length; i++)
+			if (matched[i] < _keyCounts[i])
+				found.set(i);
+		return found;
+	}
+	
+	private void matchKeys(LenientMatcher.Operator op, String pattern, BitSet into) {
+		switch (op) {
+			case CONTAINS:
+				contains(StringUtil.foldCase(pattern), into);
+				break;
+			case ENDS_WITH:
+				_reversedFolded.prefix(reverse(StringUtil.foldCase(pattern)), into);
+				break;
+			case ENDS_WITH_STRICT:
+				_reversed.prefix(reverse(pattern), into);
+				break;
+			case STARTS_WITH:
+				_sortedFolded.prefix(StringUtil.foldCase(pattern), into);
+				break;
+			case STARTS_WITH_STRICT:
+				_sorted.prefix(pattern, into);
+				break;
+			case EQUALS_STRICT:
+				set(_exact.get(pattern), into);
+				break;
+			case GREATER: // the pattern is greater than the name
+				_sorted.range(0, _sorted.lowerBound(pattern), into);
+				break;
+			case LESS: // the pattern is less than the name
+				_sorted.range(_sorted.upperBound(pattern), _keys.length, into);
+				break;
+			case GLOB:
+				glob(Glob.compile(pattern), into);
+				break;
+			default:
+				set(_folded.get(StringUtil.foldCase(pattern)), into);
+		}
+	}
+	
+	private static void set(int[] ids, BitSet into) {
+		if (ids != null)
+			for (int id : ids)
+				into.set(id);
+	}
+	
+	private void contains(String folded, BitSet into) {
+		int length = folded.length();
+		if (length == 0) {
+			into.set(0, _keys.length);
+			return;
+		}
+		
+		if (length <= GRAM) {
+			set(_grams.get(gram(folded, 0, length)), into);
+			return;
+		}
+		
+		int[] rarest = null;
+		for (int i = 0; i + GRAM <= length; i++) {
+			int[] ids = _grams.get(gram(folded, i, GRAM));
+			if (ids == null)
+				return;
+			if (rarest == null || ids.length < rarest.length)
+				rarest = ids;
+		}
+		
+		for (int id : rarest)
+			if (_foldedKeys[id].contains(folded))
+				into.set(id);
+	}
+	
+	private void glob(Glob glob, BitSet into) {
+		Sorted sorted = _sortedFolded;
+		String prefix = glob.getPrefix();
+		for (int i = sorted.lowerBound(prefix); i < sorted._keys.length && sorted._keys[i].startsWith(prefix); i++)
+			if (glob.matches(_keys[sorted._ids[i]]))
+				into.set(sorted._ids[i]);
+	}
+	
+	private static class Sorted {
+		
+		private String[] _keys;
+		private int[] _ids;
+		
+		Sorted(String[] keys) {
+			Integer[] order = new Integer[keys.length];
+			for (int i = 0; i < order.length; i++)
+				order[i] = i;
+			Arrays.sort(order, (a, b) -> keys[a].compareTo(keys[b]));
+			
+			_keys = new String[keys.length];
+			_ids = new int[keys.length];
+			for (int i = 0; i < order.length; i++) {
+				_keys[i] = keys[order[i]];
+				_ids[i] = order[i];
+			}
+		}
+		
+		// the first index whose key is not less than s
+		int lowerBound(String s) {
+			int low = 0, high = _keys.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (_keys[mid].compareTo(s) < 0)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+		
+		// the first index whose key is greater than s
+		int upperBound(String s) {
+			int low = 0, high = _keys.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (_keys[mid].compareTo(s) <= 0)
+					low = mid + 1;
+				else
+					high = mid;
+			}
+			return low;
+		}
+		
+		void range(int from, int to, BitSet into) {
+			for (int i = from; i < to; i++)
+				into.set(_ids[i]);
+		}
+		
+		void prefix(String prefix, BitSet into) {
+			for (int i = lowerBound(prefix); i < _keys.length && _keys[i].startsWith(prefix); i++)
+				into.set(_ids[i]);
+		}
+		
+	}
+	
+}
@@ -0,0 +1,203 @@
+package info.malignantshadow.api.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compiled glob pattern, used by the {@code #} operator of matchers {@link LenientMatcher#compile(String, boolean) compiled} with globs. In
+ * a glob, {@code *} matches any amount of characters, {@code ?} matches any single character and {@code \} makes the next character
+ * literal. Everything else is matched ignoring case.
+ * 
+ * <p>
+ * The pattern is split into the segments between its {@code *} wildcards. The first segment has to match at the start of a string and the
+ * last at its end, and every other segment is matched at its first occurrence after the previous one, which never needs backtracking.
+ * Segments of up to 64 characters are searched with a bit-parallel (shift-and) automaton, so matching takes time linear in the length of the
+ * string and does not allocate.
+ * </p>
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ */
+class Glob {
+	
+	private Segment[] _segments;
+	private boolean _star; // whether the pattern contains a '*'
+	private String _prefix;
+	private int _minLength;
+	
+	private Glob(String pattern) {
+		List<Segment> segments = new ArrayList<Segment>();
+		StringBuilder chars = new StringBuilder();
+		List<Boolean> any = new ArrayList<Boolean>();
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			if (c == '*') {
+				segments.add(new Segment(chars, any));
+				chars.setLength(0);
+				any.clear();
+				_star = true;
+				continue;
+			}
+			
+			if (c == '\\' && i + 1 < pattern.length())
+				c = pattern.charAt(++i);
+			else if (c == '?') {
+				chars.append(c);
+				any.add(true);
+				continue;
+			}
+			chars.append(StringUtil.foldCase(c));
+			any.add(false);
+		}
+		segments.add(new Segment(chars, any));
+		
+		_segments = segments.toArray(new Segment[segments.size()]);
+		Segment first = _segments[0];
+		int literal = 0;
+		while (literal < first._length && !first._wild[literal])
+			literal++;
+		_prefix = new String(first._chars, 0, literal);
+		for (Segment s : _segments)
+			_minLength += s._length;
+	}
+	
+	/**
+	 * Compile the given glob.
+	 * 
+	 * @param pattern
+	 *            The glob
+	 * @return The compiled glob.
+	 */
+	static Glob compile(String pattern) {
+		return new Glob(pattern);
+	}
+	
+	/**
+	 * Get the case-folded literal text at the start of this glob, before its first wildcard. Every string this glob matches starts with it
+	 * (ignoring case).
+	 * 
+	 * @return The prefix.
+	 */
+	String getPrefix() {
+		return _prefix;
+	}
+	
+	/**
+	 * Test the given string against this glob.
+	 * 
+	 * @param s
+	 *            The string
+	 * @return {@code true} if the whole string matches.
+	 */
+	boolean matches(String s) {
+		int length = s.length();
+		if (!_star)
+			return length == _minLength && _segments[0].matchesAt(s, 0);
+		
+		Segment first = _segments[0], last = _segments[_segments.length - 1];
+		if (length < _minLength || !first.matchesAt(s, 0) || !last.matchesAt(s, length - last._length))
+			return false;
+		
+		int from = first._length, to = length - last._length;
+		for (int i = 1; i < _segments.length - 1; i++) {
+			from = _segments[i].find(s, from, to);
+			if (from < 0)
+				return false;
+		}
+		return true;
+	}
+	
+	private static class Segment {
+		
+		private char[] _chars; // folded
+		private boolean[] _wild;
+		private int _length;
+		
+		// for the shift-and search: the positions each character can be at
+		private long[] _ascii;
+		private char[] _keys;
+		private long[] _masks;
+		private long _anyMask;
+		
+		Segment(CharSequence chars, List<Boolean> any) {
+			_length = chars.length();
+			_chars = new char[_length];
+			_wild = new boolean[_length];
+			for (int i = 0; i < _length; i++) {
+				_chars[i] = chars.charAt(i);
+				_wild[i] = any.get(i);
+			}
+			
+			if (_length == 0 || _length > 64)
+				return;
+			
+			_ascii = new long[128];
+			char[] keys = new char[_length];
+			int count = 0;
+			for (int i = 0; i < _length; i++) {
+				if (_wild[i])
+					_anyMask |= 1L << i;
+				else if (_chars[i] < 128)
+					_ascii[_chars[i]] |= 1L << i;
+				else
+					keys[count++] = _chars[i];
+			}
+			Arrays.sort(keys, 0, count);
+			int distinct = 0;
+			for (int i = 0; i < count; i++)
+				if (distinct == 0 || keys[distinct - 1] != keys[i])
+					keys[distinct++] = keys[i];
+			_keys = Arrays.copyOf(keys, distinct);
+			_masks = new long[distinct];
+			for (int i = 0; i < _length; i++) {
+				if (!_wild[i] && _chars[i] >= 128)
+					_masks[Arrays.binarySearch(_keys, _chars[i])] |= 1L << i;
+			}
+			for (int i = 0; i < 128; i++)
+				_ascii[i] |= _anyMask;
+		}
+		
+		private long mask(char c) {
+			if (c < 128)
+				return _ascii[c];
+			
+			int index = Arrays.binarySearch(_keys, c);
+			return index < 0 ? _anyMask : _masks[index] | _anyMask;
+		}
+		
+		boolean matchesAt(String s, int at) {
+			if (at < 0 || at + _length > s.length())
+				return false;
+			
+			for (int i = 0; i < _length; i++)
+				if (!_wild[i] && _chars[i] != StringUtil.foldCase(s.charAt(at + i)))
+					return false;
+			
+			return true;
+		}
+		
+		// the end of the first occurrence of this segment that lies within [from, to), or -1
+		int find(String s, int from, int to) {
+			if (_length == 0)
+				return from;
+			
+			if (_ascii == null) { // too long for a 64-bit state
+				for (int i = from; i + _length <= to; i++)
+					if (matchesAt(s, i))
+						return i + _length;
+				return -1;
+			}
+			
+			long state = 0, accept = 1L << (_length - 1);
+			for (int i = from; i < to; i++) {
+				state = ((state << 1) | 1) & mask(StringUtil.foldCase(s.charAt(i)));
+				if ((state & accept) != 0)
+					return i + 1;
+			}
+			return -1;
+		}
+		
+	}
+	
+}
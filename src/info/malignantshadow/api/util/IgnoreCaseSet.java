@@ -0,0 +1,172 @@
+package info.malignantshadow.api.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * An immutable set of strings that is searched ignoring case, as {@link StringUtil#eic(String, String...)} does. The case-folded hash of
+ * every string is computed when the set is created, so a lookup folds the searched string once and usually compares it to a single string.
+ * Lookups accept any {@link CharSequence}, or a range of one, so parts of a larger string can be looked up without copying them.
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ */
+public class IgnoreCaseSet {
+	
+	private String[] _words; // in the order they were given, without duplicates
+	private String[] _table;
+	private char[][] _folded;
+	private int[] _hashes;
+	private int _mask;
+	
+	private IgnoreCaseSet(Collection<String> words) {
+		int capacity = Integer.highestOneBit(Math.max(2, words.size()) * 2 - 1) * 2; // at most half full
+		_table = new String[capacity];
+		_folded = new char[capacity][];
+		_hashes = new int[capacity];
+		_mask = capacity - 1;
+		
+		int size = 0;
+		String[] added = new String[words.size()];
+		for (String word : words) {
+			if (word == null || contains(word))
+				continue;
+			
+			int hash = hash(word, 0, word.length());
+			int slot = slot(hash);
+			while (_table[slot] != null)
+				slot = (slot + 1) & _mask;
+			
+			_table[slot] = word;
+			_folded[slot] = StringUtil.foldCase(word).toCharArray();
+			_hashes[slot] = hash;
+			added[size++] = word;
+		}
+		_words = Arrays.copyOf(added, size);
+	}
+	
+	/**
+	 * Create a set of the given strings. {@code null} elements are ignored, as are strings that equal an earlier one ignoring case.
+	 * 
+	 * @param words
+	 *            The strings
+	 * @return The set.
+	 */
+	public static IgnoreCaseSet of(String... words) {
+		return new IgnoreCaseSet(Arrays.asList(words));
+	}
+	
+	/**
+	 * Create a set of the given strings. {@code null} elements are ignored, as are strings that equal an earlier one ignoring case.
+	 * 
+	 * @param words
+	 *            The strings
+	 * @return The set.
+	 */
+	public static IgnoreCaseSet of(Collection<String> words) {
+		return new IgnoreCaseSet(words);
+	}
+	
+	private static int hash(CharSequence s, int start, int end) {
+		int hash = 0;
+		for (int i = start; i < end; i++)
+			hash = 31 * hash + StringUtil.foldCase(s.charAt(i));
+		return hash;
+	}
+	
+	private int slot(int hash) {
+		return (hash ^ hash >>> 16) & _mask;
+	}
+	
+	/**
+	 * Get the amount of strings in this set.
+	 * 
+	 * @return The size.
+	 */
+	public int size() {
+		return _words.length;
+	}
+	
+	/**
+	 * Get the strings in this set, in the order they were given.
+	 * 
+	 * @return The strings.
+	 */
+	public String[] toArray() {
+		return _words.clone();
+	}
+	
+	/**
+	 * Does this set contain the given string, ignoring case?
+	 * 
+	 * @param s
+	 *            The string
+	 * @return {@code true} if the set contains the string.
+	 */
+	public boolean contains(CharSequence s) {
+		return s != null && get(s, 0, s.length()) != null;
+	}
+	
+	/**
+	 * Does this set contain the given range of the given sequence, ignoring case?
+	 * 
+	 * @param s
+	 *            The sequence
+	 * @param start
+	 *            The start of the range (inclusive)
+	 * @param end
+	 *            The end of the range (exclusive)
+	 * @return {@code true} if the set contains the range.
+	 */
+	public boolean contains(CharSequence s, int start, int end) {
+		return get(s, start, end) != null;
+	}
+	
+	/**
+	 * Get the string in this set that equals the given string, ignoring case.
+	 * 
+	 * @param s
+	 *            The string
+	 * @return The string as it was given to this set, or {@code null} if the set does not contain it.
+	 */
+	public String get(CharSequence s) {
+		return s == null ? null : get(s, 0, s.length());
+	}
+	
+	/**
+	 * Get the string in this set that equals the given range of the given sequence, ignoring case.
+	 * 
+	 * @param s
+	 *            The sequence
+	 * @param start
+	 *            The start of the range (inclusive)
+	 * @param end
+	 *            The end of the range (exclusive)
+	 * @return The string as it was given to this set, or {@code null} if the set does not contain the range.
+	 */
+	public String get(CharSequence s, int start, int end) {
+		int hash = hash(s, start, end);
+		for (int slot = slot(hash); _table[slot] != null; slot = (slot + 1) & _mask)
+			if (_hashes[slot] == hash && matches(_folded[slot], s, start, end))
+				return _table[slot];
+		
+		return null;
+	}
+	
+	private static boolean matches(char[] folded, CharSequence s, int start, int end) {
+		if (folded.length != end - start)
+			return false;
+		
+		for (int i = 0; i < folded.length; i++)
+			if (folded[i] != StringUtil.foldCase(s.charAt(start + i)))
+				return false;
+		
+		return true;
+	}
+	
+	@Override
+	public String toString() {
+		return Arrays.toString(_words);
+	}
+	
+}
@@ -0,0 +1,412 @@
+package info.malignantshadow.api.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * A compiled form of a {@link StringUtil#lenientMatch(String, String) lenient match} test string. The operator prefix and negation of the test
+ * string are resolved once when the matcher is compiled, into an evaluator for that operator, so testing candidates neither parses the test
+ * string nor dispatches on its operator again. Matching does not allocate; case is
+ * ignored per character, as {@link String#regionMatches(boolean, int, String, int, int)} does, rather than by lower-casing either string.
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ */
+public class LenientMatcher implements Predicate<String> {
+	
+	/**
+	 * Represents the operator of a lenient match, as given by the first character of the test string.
+	 * 
+	 * @author MalignantShadow (Caleb Downs)
+	 *
+	 */
+	public static enum Operator {
+		
+		/**
+		 * {@code ~} - The candidate contains the pattern (case-insensitive)
+		 */
+		CONTAINS('~'),
+		
+		/**
+		 * {@code *} - The candidate ends with the pattern (case-insensitive)
+		 */
+		ENDS_WITH('*'),
+		
+		/**
+		 * {@code $} - The candidate ends with the pattern (case sensitive)
+		 */
+		ENDS_WITH_STRICT('$'),
+		
+		/**
+		 * {@code ^} - The candidate starts with the pattern (case-insensitive)
+		 */
+		STARTS_WITH('^'),
+		
+		/**
+		 * {@code %} - The candidate starts with the pattern (case sensitive)
+		 */
+		STARTS_WITH_STRICT('%'),
+		
+		/**
+		 * {@code =} - The candidate equals the pattern (case sensitive)
+		 */
+		EQUALS_STRICT('='),
+		
+		/**
+		 * {@code >} - The pattern is greater than the candidate (case sensitive)
+		 */
+		GREATER('>'),
+		
+		/**
+		 * {@code <} - The pattern is less than the candidate (case sensitive)
+		 */
+		LESS('<'),
+		
+		/**
+		 * {@code #} - The candidate matches the pattern as a glob, where {@code *} matches any amount of characters, {@code ?} matches any single
+		 * character and {@code \} escapes the next character (case-insensitive). This operator is only recognized by matchers that are
+		 * {@link LenientMatcher#compile(String, boolean) compiled} with globs enabled; otherwise {@code #} is part of the pattern like any
+		 * other character.
+		 */
+		GLOB('#'),
+		
+		/**
+		 * No prefix - The candidate equals the pattern (case-insensitive)
+		 */
+		EQUALS((char) 0);
+		
+		private char _prefix;
+		
+		private Operator(char prefix) {
+			_prefix = prefix;
+		}
+		
+		/**
+		 * Get the prefix character of this operator.
+		 * 
+		 * @return The prefix, or {@code 0} if this operator has no prefix.
+		 */
+		public char getPrefix() {
+			return _prefix;
+		}
+		
+		/**
+		 * Get the operator for the given prefix character. {@code #} is not recognized, see {@link #forPrefix(char, boolean)}.
+		 * 
+		 * @param c
+		 *            The prefix
+		 * @return The operator, or {@link #EQUALS} if the character is not an operator prefix.
+		 */
+		public static Operator forPrefix(char c) {
+			return forPrefix(c, false);
+		}
+		
+		/**
+		 * Get the operator for the given prefix character.
+		 * 
+		 * @param c
+		 *            The prefix
+		 * @param globs
+		 *            {@code true} if {@code #} is the prefix of {@link #GLOB}
+		 * @return The operator, or {@link #EQUALS} if the character is not an operator prefix.
+		 */
+		public static Operator forPrefix(char c, boolean globs) {
+			for (Operator op : values())
+				if (op._prefix == c && c != 0 && (globs || op != GLOB))
+					return op;
+			
+			return EQUALS;
+		}
+		
+	}
+	
+	/**
+	 * The amount of candidates from which {@link #matchAllParallel(List)} tests them in parallel.
+	 */
+	public static final int PARALLEL_THRESHOLD = 4096;
+	
+	private String _test, _pattern;
+	private Operator _op;
+	private boolean _negated;
+	private Predicate<String> _evaluator; // the operator, pattern and negation, resolved once
+	
+	private LenientMatcher(String test, boolean globs) {
+		_test = test;
+		if (test == null)
+			return;
+		
+		int start = patternStart(test);
+		_negated = start % 2 == 1;
+		_op = operator(test, start, globs);
+		_pattern = test.substring(_op == Operator.EQUALS ? start : start + 1);
+		_evaluator = evaluator(_op, _pattern, _negated);
+	}
+	
+	// one evaluator per operator, so testing a candidate does not dispatch on the operator again
+	private static Predicate<String> evaluator(Operator op, String pattern, boolean negated) {
+		int length = pattern.length();
+		switch (op) {
+			case CONTAINS:
+				return (s) -> contains(s, pattern, 0, length) != negated;
+			case ENDS_WITH:
+				return (s) -> s.regionMatches(true, s.length() - length, pattern, 0, length) != negated;
+			case ENDS_WITH_STRICT:
+				return (s) -> s.regionMatches(s.length() - length, pattern, 0, length) != negated;
+			case STARTS_WITH:
+				return (s) -> s.regionMatches(true, 0, pattern, 0, length) != negated;
+			case STARTS_WITH_STRICT:
+				return (s) -> s.regionMatches(0, pattern, 0, length) != negated;
+			case EQUALS_STRICT:
+				return (s) -> s.equals(pattern) != negated;
+			case GREATER:
+				return (s) -> pattern.compareTo(s) > 0 != negated;
+			case LESS:
+				return (s) -> pattern.compareTo(s) < 0 != negated;
+			case GLOB:
+				Glob glob = Glob.compile(pattern);
+				return (s) -> glob.matches(s) != negated;
+			default:
+				return (s) -> s.equalsIgnoreCase(pattern) != negated;
+		}
+	}
+	
+	// the amount of leading '!' characters
+	private static int patternStart(String test) {
+		int start = 0;
+		while (start < test.length() && test.charAt(start) == '!')
+			start++;
+		return start;
+	}
+	
+	private static Operator operator(String test, int start, boolean globs) {
+		return start < test.length() ? Operator.forPrefix(test.charAt(start), globs) : Operator.EQUALS;
+	}
+	
+	/**
+	 * Test the given string against the given test string without compiling it, as {@link StringUtil#lenientMatch(String, String)} does. Globs
+	 * are not recognized.
+	 * 
+	 * @param s
+	 *            The string
+	 * @param test
+	 *            The test string
+	 * @return {@code true} if the string matches.
+	 */
+	static boolean matches(String s, String test) {
+		if (s == null || test == null)
+			return s == test;
+		
+		int start = patternStart(test);
+		Operator op = operator(test, start, false);
+		return evaluate(op, s, test, op == Operator.EQUALS ? start : start + 1) != (start % 2 == 1);
+	}
+	
+	// tests s against the pattern test.substring(from), without creating it; used for test strings that are not compiled
+	private static boolean evaluate(Operator op, String s, String test, int from) {
+		int length = test.length() - from;
+		switch (op) {
+			case CONTAINS:
+				return contains(s, test, from, length);
+			case ENDS_WITH:
+				return s.regionMatches(true, s.length() - length, test, from, length);
+			case ENDS_WITH_STRICT:
+				return s.regionMatches(s.length() - length, test, from, length);
+			case STARTS_WITH:
+				return s.regionMatches(true, 0, test, from, length);
+			case STARTS_WITH_STRICT:
+				return s.regionMatches(0, test, from, length);
+			case EQUALS_STRICT:
+				return s.length() == length && s.regionMatches(0, test, from, length);
+			case GREATER:
+				return compare(test, from, s) > 0;
+			case LESS:
+				return compare(test, from, s) < 0;
+			default:
+				return s.length() == length && s.regionMatches(true, 0, test, from, length);
+		}
+	}
+	
+	private static boolean contains(String s, String test, int from, int length) {
+		if (length == 0)
+			return true;
+		
+		char first = StringUtil.foldCase(test.charAt(from));
+		for (int i = 0, last = s.length() - length; i <= last; i++)
+			if (StringUtil.foldCase(s.charAt(i)) == first && s.regionMatches(true, i + 1, test, from + 1, length - 1))
+				return true;
+		
+		return false;
+	}
+	
+	// test.substring(from).compareTo(s)
+	private static int compare(String test, int from, String s) {
+		int length = test.length() - from;
+		int min = Math.min(length, s.length());
+		for (int i = 0; i < min; i++) {
+			int diff = test.charAt(from + i) - s.charAt(i);
+			if (diff != 0)
+				return diff;
+		}
+		return length - s.length();
+	}
+	
+	/**
+	 * Compile the given test string. The {@link Operator#GLOB glob} operator is not recognized, so the test string has the same meaning as
+	 * it has for {@link StringUtil#lenientMatch(String, String)}.
+	 * 
+	 * @param test
+	 *            The test string, see {@link StringUtil#lenientMatch(String, String)} for its syntax. If it is {@code null}, the matcher will only
+	 *            match {@code null}.
+	 * @return The compiled matcher.
+	 */
+	public static LenientMatcher compile(String test) {
+		return new LenientMatcher(test, false);
+	}
+	
+	/**
+	 * Compile the given test string, optionally recognizing the {@link Operator#GLOB glob} operator. With globs enabled, a test string such
+	 * as {@code #guard*} is a glob rather than a name that starts with {@code #}, and a literal leading {@code #} is matched with
+	 * {@code ##} (or {@code =#}, case sensitive).
+	 * 
+	 * @param test
+	 *            The test string, see {@link StringUtil#lenientMatch(String, String)} for its syntax. If it is {@code null}, the matcher will only
+	 *            match {@code null}.
+	 * @param globs
+	 *            {@code true} if a leading {@code #} makes the pattern a glob
+	 * @return The compiled matcher.
+	 */
+	public static LenientMatcher compile(String test, boolean globs) {
+		return new LenientMatcher(test, globs);
+	}
+	
+	/**
+	 * Get the test string this matcher was compiled from.
+	 * 
+	 * @return The test string.
+	 */
+	public String getTest() {
+		return _test;
+	}
+	
+	/**
+	 * Get the operator of this matcher. Negation ({@code !}) is not an operator, see {@link #isNegated()}.
+	 * 
+	 * @return The operator, or {@code null} if this matcher was compiled from {@code null}.
+	 */
+	public Operator getOperator() {
+		return _op;
+	}
+	
+	/**
+	 * Get the pattern of this matcher, i.e. the test string without its negation and operator prefixes.
+	 * 
+	 * @return The pattern.
+	 */
+	public String getPattern() {
+		return _pattern;
+	}
+	
+	/**
+	 * Is the result of this matcher negated? This is the case if the test string starts with an odd amount of {@code !} characters.
+	 * 
+	 * @return {@code true} if the result is negated.
+	 */
+	public boolean isNegated() {
+		return _negated;
+	}
+	
+	/**
+	 * Test the given string against this matcher.
+	 * 
+	 * @param s
+	 *            The string
+	 * @return {@code true} if the string matches.
+	 */
+	public boolean matches(String s) {
+		if (s == null || _test == null)
+			return s == _test;
+		
+		return _evaluator.test(s);
+	}
+	
+	@Override
+	public boolean test(String s) {
+		return matches(s);
+	}
+	
+	/**
+	 * Test every given string against this matcher.
+	 * 
+	 * @param candidates
+	 *            The strings
+	 * @return The indexes of the strings that match.
+	 */
+	public BitSet matchAll(String[] candidates) {
+		return matchAll(Arrays.asList(candidates), false);
+	}
+	
+	/**
+	 * Test every given string against this matcher.
+	 * 
+	 * @param candidates
+	 *            The strings
+	 * @return The indexes of the strings that match.
+	 */
+	public BitSet matchAll(List<String> candidates) {
+		return matchAll(candidates, false);
+	}
+	
+	/**
+	 * Test every given string against this matcher, splitting the work across the {@link java.util.concurrent.ForkJoinPool#commonPool()
+	 * common pool} if there are at least {@link #PARALLEL_THRESHOLD} strings.
+	 * 
+	 * @param candidates
+	 *            The strings
+	 * @return The indexes of the strings that match.
+	 */
+	public BitSet matchAllParallel(String[] candidates) {
+		return matchAll(Arrays.asList(candidates), true);
+	}
+	
+	/**
+	 * Test every given string against this matcher, splitting the work across the {@link java.util.concurrent.ForkJoinPool#commonPool()
+	 * common pool} if there are at least {@link #PARALLEL_THRESHOLD} strings.
+	 * 
+	 * @param candidates
+	 *            The strings
+	 * @return The indexes of the strings that match.
+	 */
+	public BitSet matchAllParallel(List<String> candidates) {
+		return matchAll(candidates, true);
+	}
+	
+	private BitSet matchAll(List<String> candidates, boolean parallel) {
+		List<String> list = candidates instanceof RandomAccess ? candidates : new ArrayList<String>(candidates);
+		int size = list.size();
+		long[] words = new long[(size + 63) >>> 6];
+		
+		// each word of the result is filled by one task, so tasks never write to the same word
+		IntStream stream = IntStream.range(0, words.length);
+		if (parallel && size >= PARALLEL_THRESHOLD)
+			stream = stream.parallel();
+		stream.forEach((w) -> {
+			long word = 0;
+			for (int i = w << 6, end = Math.min(size, i + 64); i < end; i++)
+				if (matches(list.get(i)))
+					word |= 1L << i;
+			words[w] = word;
+		});
+		return BitSet.valueOf(words);
+	}
+	
+	@Override
+	public String toString() {
+		return _test;
+	}
+	
+}
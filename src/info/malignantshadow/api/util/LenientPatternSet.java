@@ -0,0 +1,295 @@
+package info.malignantshadow.api.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A set of {@link StringUtil#lenientMatch(String, String) lenient match} test strings that can all be tested against a string at once.
+ * 
+ * <p>
+ * The patterns of tests with the {@code ~}, {@code ^}, {@code %}, {@code *} and {@code $} operators are compiled into a single Aho-Corasick
+ * automaton over case-folded characters, so a string is scanned once no matter how many of these tests there are. Prefix and suffix tests
+ * only count hits at the start or end of the string, and case sensitive tests are verified when they hit. All other tests are matched one
+ * at a time.
+ * </p>
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ */
+public class LenientPatternSet {
+	
+	private LenientMatcher[] _matchers;
+	private int[] _individual; // the tests that are not part of the automaton
+	private boolean[] _scanned; // the tests that are part of the automaton
+	private boolean _hasNegated; // whether any test in the automaton is negated
+	
+	// the automaton; node 0 is the root
+	private char[][] _keys;
+	private int[][] _next;
+	private int[] _fail, _outputLink;
+	private int[][] _outputs;
+	
+	private LenientPatternSet(Collection<String> tests, boolean globs) {
+		_matchers = new LenientMatcher[tests.size()];
+		_scanned = new boolean[_matchers.length];
+		List<Integer> individual = new ArrayList<Integer>();
+		List<Map<Character, Integer>> children = new ArrayList<Map<Character, Integer>>();
+		List<List<Integer>> outputs = new ArrayList<List<Integer>>();
+		children.add(new TreeMap<Character, Integer>());
+		outputs.add(new ArrayList<Integer>());
+		
+		int i = 0;
+		for (String test : tests) {
+			LenientMatcher m = LenientMatcher.compile(test, globs);
+			_matchers[i] = m;
+			if (!isScanned(m)) {
+				individual.add(i++);
+				continue;
+			}
+			
+			int node = 0;
+			for (char c : m.getPattern().toCharArray()) {
+				Character key = StringUtil.foldCase(c);
+				Integer child = children.get(node).get(key);
+				if (child == null) {
+					child = children.size();
+					children.get(node).put(key, child);
+					children.add(new TreeMap<Character, Integer>());
+					outputs.add(new ArrayList<Integer>());
+				}
+				node = child;
+			}
+			outputs.get(node).add(i);
+			_scanned[i] = true;
+			_hasNegated |= m.isNegated();
+			i++;
+		}
+		
+		_individual = new int[individual.size()];
+		for (int j = 0; j < _individual.length; j++)
+			_individual[j] = individual.get(j);
+		
+		int size = children.size();
+		_keys = new char[size][];
+		_next = new int[size][];
+		_outputs = new int[size][];
+		for (int node = 0; node < size; node++) {
+			Map<Character, Integer> map = children.get(node);
+			_keys[node] = new char[map.size()];
+			_next[node] = new int[map.size()];
+			int j = 0;
+			for (Map.Entry<Character, Integer> e : map.entrySet()) { // sorted, for the binary search in child()
+				_keys[node][j] = e.getKey();
+				_next[node][j++] = e.getValue();
+			}
+			
+			List<Integer> out = outputs.get(node);
+			_outputs[node] = new int[out.size()];
+			for (j = 0; j < _outputs[node].length; j++)
+				_outputs[node][j] = out.get(j);
+		}
+		
+		link();
+	}
+	
+	// tests whose patterns go into the automaton; empty patterns always match, so the automaton would not help
+	private static boolean isScanned(LenientMatcher m) {
+		if (m.getOperator() == null || m.getPattern().isEmpty())
+			return false;
+		
+		switch (m.getOperator()) {
+			case CONTAINS:
+			case STARTS_WITH:
+			case STARTS_WITH_STRICT:
+			case ENDS_WITH:
+			case ENDS_WITH_STRICT:
+				return true;
+			default:
+				return false;
+		}
+	}
+	
+	// compute the failure links breadth-first, and link each node to the nearest node on its failure chain that has outputs
+	private void link() {
+		int size = _keys.length;
+		_fail = new int[size];
+		_outputLink = new int[size];
+		Arrays.fill(_outputLink, -1);
+		Deque<Integer> queue = new ArrayDeque<Integer>();
+		for (int child : _next[0])
+			queue.add(child);
+		
+		while (!queue.isEmpty()) {
+			int node = queue.poll();
+			int fail = _fail[node];
+			_outputLink[node] = _outputs[fail].length > 0 ? fail : _outputLink[fail];
+			for (int j = 0; j < _keys[node].length; j++) {
+				int child = _next[node][j];
+				char c = _keys[node][j];
+				int f = fail;
+				while (f != 0 && child(f, c) < 0)
+					f = _fail[f];
+				int target = child(f, c);
+				_fail[child] = target < 0 || target == child ? 0 : target;
+				queue.add(child);
+			}
+		}
+	}
+	
+	private int child(int node, char c) {
+		int index = Arrays.binarySearch(_keys[node], c);
+		return index < 0 ? -1 : _next[node][index];
+	}
+	
+	/**
+	 * Compile the given test strings.
+	 * 
+	 * @param tests
+	 *            The test strings, see {@link StringUtil#lenientMatch(String, String)} for their syntax
+	 * @return The compiled set.
+	 */
+	public static LenientPatternSet compile(String... tests) {
+		return new LenientPatternSet(Arrays.asList(tests), false);
+	}
+	
+	/**
+	 * Compile the given test strings.
+	 * 
+	 * @param tests
+	 *            The test strings, see {@link StringUtil#lenientMatch(String, String)} for their syntax
+	 * @return The compiled set.
+	 */
+	public static LenientPatternSet compile(Collection<String> tests) {
+		return new LenientPatternSet(tests, false);
+	}
+	
+	/**
+	 * Compile the given test strings, optionally recognizing {@link LenientMatcher.Operator#GLOB glob} tests, see
+	 * {@link LenientMatcher#compile(String, boolean)}. Globs are matched one at a time.
+	 * 
+	 * @param tests
+	 *            The test strings, see {@link StringUtil#lenientMatch(String, String)} for their syntax
+	 * @param globs
+	 *            {@code true} if a leading {@code #} makes a test string a glob
+	 * @return The compiled set.
+	 */
+	public static LenientPatternSet compile(Collection<String> tests, boolean globs) {
+		return new LenientPatternSet(tests, globs);
+	}
+	
+	/**
+	 * Get the amount of test strings in this set.
+	 * 
+	 * @return The size.
+	 */
+	public int size() {
+		return _matchers.length;
+	}
+	
+	/**
+	 * Get the test string at the given index.
+	 * 
+	 * @param index
+	 *            The index
+	 * @return The test string.
+	 */
+	public String getTest(int index) {
+		return _matchers[index].getTest();
+	}
+	
+	/**
+	 * Get the test strings that the given string matches.
+	 * 
+	 * @param s
+	 *            The string
+	 * @return The indexes of the matching test strings, in the order they were given.
+	 */
+	public BitSet matches(String s) {
+		BitSet found = new BitSet(_matchers.length);
+		for (int i : _individual)
+			if (_matchers[i].matches(s))
+				found.set(i);
+		
+		if (s == null || _individual.length == _matchers.length)
+			return found;
+		
+		BitSet hits = new BitSet(_matchers.length);
+		scan(s, hits, false);
+		for (int i = 0; i < _matchers.length; i++)
+			if (_scanned[i] && hits.get(i) != _matchers[i].isNegated())
+				found.set(i);
+		return found;
+	}
+	
+	/**
+	 * Does the given string match any test string in this set?
+	 * 
+	 * @param s
+	 *            The string
+	 * @return {@code true} if at least one test string matches.
+	 */
+	public boolean matchesAny(String s) {
+		for (int i : _individual)
+			if (_matchers[i].matches(s))
+				return true;
+		
+		if (s == null || _individual.length == _matchers.length)
+			return false;
+		
+		if (!_hasNegated)
+			return scan(s, null, true);
+		
+		return !matches(s).isEmpty();
+	}
+	
+	// feed s through the automaton, setting the tests that hit (without negation); returns true if any test hit
+	private boolean scan(String s, BitSet hits, boolean first) {
+		boolean hit = false;
+		int node = 0, length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = StringUtil.foldCase(s.charAt(i));
+			int next;
+			while ((next = child(node, c)) < 0 && node != 0)
+				node = _fail[node];
+			node = next < 0 ? 0 : next;
+			
+			for (int out = _outputs[node].length > 0 ? node : _outputLink[node]; out > 0; out = _outputLink[out]) {
+				for (int test : _outputs[out]) {
+					if (!accepts(_matchers[test], s, i)) // i is where the pattern ends
+						continue;
+					if (first)
+						return true;
+					
+					hits.set(test);
+					hit = true;
+				}
+			}
+		}
+		return hit;
+	}
+	
+	private static boolean accepts(LenientMatcher m, String s, int end) {
+		String pattern = m.getPattern();
+		int start = end - pattern.length() + 1;
+		switch (m.getOperator()) {
+			case STARTS_WITH:
+				return start == 0;
+			case STARTS_WITH_STRICT:
+				return start == 0 && s.regionMatches(0, pattern, 0, pattern.length());
+			case ENDS_WITH:
+				return end == s.length() - 1;
+			case ENDS_WITH_STRICT:
+				return end == s.length() - 1 && s.regionMatches(start, pattern, 0, pattern.length());
+			default:
+				return true;
+		}
+	}
+	
+}
@@ -1,10 +1,24 @@
 package info.malignantshadow.api.util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.RandomAccess;
+import java.util.StringJoiner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 /**
  * Utility class for {@link List} manipulation
@@ -38,7 +52,14 @@ public class ListUtil {
 	}
 
 	/**
-	 * A size restricter that simply returns the first {@code size} elements in the given list.
+	 * A size restricter that simply returns the first {@code size} elements in the given list. If {@code size} is negative, the last
+	 * {@code -size} elements are returned instead, starting with the last element.
+	 * 
+	 * <p>
+	 * Iterators and streams can be restricted the same way without collecting them into a list first. The first elements are taken without
+	 * reading any further, and the last elements are kept in a ring buffer of {@code -size} elements while the rest are read, so at most
+	 * {@code |size|} elements are held in memory.
+	 * </p>
 	 * 
 	 * @author MalignantShadow (Caleb Downs)
 	 *
@@ -50,7 +71,7 @@ public class ListUtil {
 			if (list == null || list.isEmpty() || size == 0)
 				return new ArrayList<T>();
 
-			int amount = Math.abs(size);
+			int amount = size == Integer.MIN_VALUE ? list.size() : Math.abs(size);
 			List<T> restricted = new ArrayList<T>();
 			for (int i = 0; i < amount; i++) {
 				int index = size > 0 ? i : list.size() - 1 - i;
@@ -61,35 +82,405 @@ public class ListUtil {
 			}
 			return restricted;
 		}
+
+		/**
+		 * Restrict the size of the given Iterator, as {@link #restrictSize(List, int)} does. If {@code size} is positive, no more than
+		 * {@code size} elements are read.
+		 * 
+		 * @param it
+		 *            The iterator
+		 * @param size
+		 *            The size
+		 * @return A new list containing a maximum of {@code size} elements of the given Iterator.
+		 */
+		public <T> List<T> restrictSize(Iterator<T> it, int size) {
+			List<T> restricted = new ArrayList<T>();
+			if (it == null || size == 0)
+				return restricted;
+
+			if (size > 0) {
+				while (restricted.size() < size && it.hasNext())
+					restricted.add(it.next());
+				return restricted;
+			}
+
+			// keep the last -size elements; once the buffer is full, next is the position of the oldest one
+			int amount = size == Integer.MIN_VALUE ? Integer.MAX_VALUE : -size, next = 0;
+			List<T> ring = new ArrayList<T>();
+			while (it.hasNext()) {
+				T item = it.next();
+				if (ring.size() < amount)
+					ring.add(item);
+				else {
+					ring.set(next, item);
+					next = next + 1 == amount ? 0 : next + 1;
+				}
+			}
+
+			for (int i = 0; i < ring.size(); i++) // newest first
+				restricted.add(ring.get(Math.floorMod(next - 1 - i, ring.size())));
+			return restricted;
+		}
+
+		/**
+		 * Restrict the size of the given Stream, as {@link #restrictSize(List, int)} does. This is a terminal operation on the stream. If
+		 * {@code size} is positive, no more than {@code size} elements are read.
+		 * 
+		 * @param elements
+		 *            The elements
+		 * @param size
+		 *            The size
+		 * @return A new list containing a maximum of {@code size} elements of the given Stream.
+		 */
+		public <T> List<T> restrictSize(Stream<T> elements, int size) {
+			return restrictSize(elements == null ? null : elements.iterator(), size);
+		}
+
 	}
 
 	/**
-	 * A size restricter that returns a list with a maximum size of {@code size} elements added at random from the given list.
+	 * A size restricter that returns the {@code size} smallest elements of the given list according to a comparator, in sorted order. If
+	 * {@code size} is negative, the {@code -size} greatest elements are returned instead, starting with the greatest. The result is the same
+	 * as {@link List#sort(Comparator) sorting} the list and restricting it with a {@link DefaultSizeRestricter}, including the order of equal
+	 * elements, but the list is neither sorted nor modified.
+	 * 
+	 * <p>
+	 * The elements are fed through a heap of the best {@code |size|} elements so far, so choosing {@code k} of {@code n} elements takes
+	 * {@code O(n log k)} time and {@code O(k)} memory. {@link #restrictSizeParallel(List, int)} chooses the best elements of chunks of the
+	 * list in parallel, and then the best of those.
+	 * </p>
 	 * 
 	 * @author MalignantShadow (Caleb Downs)
 	 *
 	 */
-	public static class RandomSizeRestricter implements SizeRestricter {
+	public static class SortedSizeRestricter implements SizeRestricter {
+
+		/**
+		 * The amount of elements from which {@link #restrictSizeParallel(List, int)} splits the list into chunks.
+		 */
+		public static final int PARALLEL_THRESHOLD = 4096;
+
+		private Comparator<?> _comparator;
+
+		/**
+		 * Create a new size restricter that compares elements by their {@link Comparable natural ordering}.
+		 */
+		public SortedSizeRestricter() {
+			this(null);
+		}
+
+		/**
+		 * Create a new size restricter that compares elements with the given comparator. It must be able to compare the elements of every
+		 * list given to this restricter.
+		 * 
+		 * @param comparator
+		 *            The comparator. If it is {@code null}, elements are compared by their {@link Comparable natural ordering}.
+		 */
+		public SortedSizeRestricter(Comparator<?> comparator) {
+			_comparator = comparator;
+		}
 
 		@Override
 		public <T> List<T> restrictSize(List<T> list, int size) {
+			return restrictSize(list, size, false);
+		}
+
+		/**
+		 * Restrict the size of the given list, as {@link #restrictSize(List, int)} does, splitting the work across the
+		 * {@link ForkJoinPool#commonPool() common pool} if the list has at least {@link #PARALLEL_THRESHOLD} elements. The comparator must be
+		 * safe to use from multiple threads.
+		 * 
+		 * @param list
+		 *            The list
+		 * @param size
+		 *            The size
+		 * @return A new list containing a maximum of {@code size} elements of the given list.
+		 */
+		public <T> List<T> restrictSizeParallel(List<T> list, int size) {
+			return restrictSize(list, size, true);
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private <T> List<T> restrictSize(List<T> list, int size, boolean parallel) {
 			List<T> restricted = new ArrayList<T>();
-			if (list == null || list.isEmpty() || size <= size)
+			if (list == null || list.isEmpty() || size == 0)
 				return restricted;
 
-			List<T> copy = new ArrayList<T>(list);
-			Random r = new Random();
-			for (int i = 0; i < size; i++) {
-				if (copy.isEmpty())
-					break;
+			List<T> values = list instanceof RandomAccess ? list : new ArrayList<T>(list);
+			Comparator<? super T> comparator = (Comparator) (_comparator == null ? Comparator.naturalOrder() : _comparator);
+			int n = values.size();
+			int amount = size == Integer.MIN_VALUE ? n : Math.min(Math.abs(size), n);
+			Heap<T> best = new Heap<T>(values, comparator, size < 0, amount);
+			if (!parallel || n < PARALLEL_THRESHOLD) {
+				for (int i = 0; i < n; i++)
+					best.offer(i);
+			} else {
+				int chunk = Math.max(PARALLEL_THRESHOLD, n / (ForkJoinPool.getCommonPoolParallelism() * 4) + 1);
+				IntStream.range(0, (n + chunk - 1) / chunk).parallel().mapToObj((c) -> {
+					Heap<T> heap = new Heap<T>(values, comparator, size < 0, amount);
+					for (int i = c * chunk, end = Math.min(n, i + chunk); i < end; i++)
+						heap.offer(i);
+					return heap.toSortedArray();
+				}).forEachOrdered((indexes) -> {
+					for (int i : indexes)
+						best.offer(i);
+				});
+			}
+
+			for (int i : best.toSortedArray())
+				restricted.add(values.get(i));
+			return restricted;
+		}
+
+		// a heap of the indexes of the best elements offered to it, with the worst of them at the top
+		private static class Heap<T> {
+
+			private List<T> _values;
+			private Comparator<? super T> _comparator;
+			private boolean _reversed;
+			private int[] _heap;
+			private int _size;
 
-				restricted.add(copy.remove(r.nextInt(copy.size())));
+			Heap(List<T> values, Comparator<? super T> comparator, boolean reversed, int capacity) {
+				_values = values;
+				_comparator = comparator;
+				_reversed = reversed;
+				_heap = new int[capacity];
+			}
+
+			// the order of the result; equal elements are ordered by their index, as a stable sort would
+			private int compare(int a, int b) {
+				int result = _comparator.compare(_values.get(a), _values.get(b));
+				if (result == 0)
+					result = Integer.compare(a, b);
+				return _reversed ? -result : result;
+			}
+
+			void offer(int index) {
+				if (_size < _heap.length) {
+					int i = _size++;
+					for (int parent; i > 0 && compare(index, _heap[parent = (i - 1) / 2]) > 0; i = parent)
+						_heap[i] = _heap[parent];
+					_heap[i] = index;
+				} else if (compare(index, _heap[0]) < 0)
+					siftDown(index, _size);
+			}
+
+			// place index at the top of the first size elements of the heap, and move it down to where it belongs
+			private void siftDown(int index, int size) {
+				int i = 0;
+				for (int child; (child = 2 * i + 1) < size; i = child) {
+					if (child + 1 < size && compare(_heap[child + 1], _heap[child]) > 0)
+						child++;
+					if (compare(_heap[child], index) <= 0)
+						break;
+					_heap[i] = _heap[child];
+				}
+				_heap[i] = index;
+			}
+
+			// the indexes in this heap, best first; this empties the heap
+			int[] toSortedArray() {
+				int[] sorted = new int[_size];
+				while (_size > 0) {
+					sorted[_size - 1] = _heap[0];
+					if (--_size > 0)
+						siftDown(_heap[_size], _size);
+				}
+				return sorted;
+			}
+
+		}
+
+	}
+
+	/**
+	 * A size restricter that returns a list with a maximum size of {@code size} elements added at random from the given list. A negative
+	 * size is treated as its absolute value.
+	 * 
+	 * <p>
+	 * The elements are chosen with a partial Fisher-Yates shuffle. When only a few elements of a large list are chosen, the shuffle only
+	 * remembers the positions it swapped instead of copying the list, so choosing {@code k} elements takes {@code O(k)} time and memory.
+	 * </p>
+	 * 
+	 * @author MalignantShadow (Caleb Downs)
+	 *
+	 */
+	public static class RandomSizeRestricter implements SizeRestricter {
+
+		private Random _random;
+
+		/**
+		 * Create a new size restricter that uses the {@link ThreadLocalRandom} of the calling thread.
+		 */
+		public RandomSizeRestricter() {
+			this(null);
+		}
+
+		/**
+		 * Create a new size restricter that uses the given random number generator. Seeding it makes the chosen elements reproducible.
+		 * 
+		 * @param random
+		 *            The random number generator. If it is {@code null}, the {@link ThreadLocalRandom} of the calling thread is used.
+		 */
+		public RandomSizeRestricter(Random random) {
+			_random = random;
+		}
+
+		/**
+		 * Get the random number generator to use for the current call.
+		 * 
+		 * @return The random number generator.
+		 */
+		protected Random getRandom() {
+			return _random == null ? ThreadLocalRandom.current() : _random;
+		}
+
+		@Override
+		public <T> List<T> restrictSize(List<T> list, int size) {
+			if (list == null || list.isEmpty() || size == 0)
+				return new ArrayList<T>();
+
+			int n = list.size();
+			int amount = size == Integer.MIN_VALUE ? n : Math.min(Math.abs(size), n);
+			Random r = getRandom();
+			if (amount > n / 4 || !(list instanceof RandomAccess)) { // shuffling a copy is cheaper than tracking the swaps
+				List<T> copy = new ArrayList<T>(list);
+				for (int i = 0; i < amount; i++)
+					Collections.swap(copy, i, i + r.nextInt(n - i));
+				return new ArrayList<T>(copy.subList(0, amount));
+			}
+
+			List<T> restricted = new ArrayList<T>(amount);
+			// the positions that have been swapped, and the index of the element that is now at each of them
+			Map<Integer, Integer> swapped = new HashMap<Integer, Integer>(amount * 4 / 3 + 1);
+			for (int i = 0; i < amount; i++) {
+				int j = i + r.nextInt(n - i);
+				Integer atJ = swapped.get(j), atI = swapped.get(i);
+				swapped.put(j, atI == null ? i : atI);
+				restricted.add(list.get(atJ == null ? j : atJ));
 			}
 			return restricted;
 		}
 
 	}
 
+	/**
+	 * A size restricter that chooses a maximum of {@code size} elements at random, without needing to know how many elements there are.
+	 * Besides lists, it can restrict any {@link Iterable} or {@link Stream} in a single pass, keeping only the chosen elements in memory. A
+	 * negative size is treated as its absolute value. The chosen elements are not in any particular order.
+	 * 
+	 * <p>
+	 * Elements are chosen by reservoir sampling (Li's "Algorithm L"), which computes how many elements to skip before the next one that
+	 * replaces a chosen element, so only {@code O(k(1 + log(n / k)))} random numbers are needed to choose {@code k} of {@code n} elements.
+	 * </p>
+	 * 
+	 * @author MalignantShadow (Caleb Downs)
+	 *
+	 */
+	public static class ReservoirSizeRestricter implements SizeRestricter {
+
+		private Random _random;
+
+		/**
+		 * Create a new size restricter that uses the {@link ThreadLocalRandom} of the calling thread.
+		 */
+		public ReservoirSizeRestricter() {
+			this(null);
+		}
+
+		/**
+		 * Create a new size restricter that uses the given random number generator. Seeding it makes the chosen elements reproducible.
+		 * 
+		 * @param random
+		 *            The random number generator. If it is {@code null}, the {@link ThreadLocalRandom} of the calling thread is used.
+		 */
+		public ReservoirSizeRestricter(Random random) {
+			_random = random;
+		}
+
+		/**
+		 * Get the random number generator to use for the current call.
+		 * 
+		 * @return The random number generator.
+		 */
+		protected Random getRandom() {
+			return _random == null ? ThreadLocalRandom.current() : _random;
+		}
+
+		@Override
+		public <T> List<T> restrictSize(List<T> list, int size) {
+			return restrictSize((Iterable<T>) list, size);
+		}
+
+		/**
+		 * Choose a maximum of {@code size} elements of the given Iterable at random.
+		 * 
+		 * @param elements
+		 *            The elements
+		 * @param size
+		 *            The size
+		 * @return A new list containing a maximum of {@code size} elements of the given Iterable.
+		 */
+		public <T> List<T> restrictSize(Iterable<T> elements, int size) {
+			if (elements == null || size == 0)
+				return new ArrayList<T>();
+
+			return sample(elements.iterator(), size == Integer.MIN_VALUE ? Integer.MAX_VALUE : Math.abs(size));
+		}
+
+		/**
+		 * Choose a maximum of {@code size} elements of the given Stream at random. This is a terminal operation on the stream.
+		 * 
+		 * @param elements
+		 *            The elements
+		 * @param size
+		 *            The size
+		 * @return A new list containing a maximum of {@code size} elements of the given Stream.
+		 */
+		public <T> List<T> restrictSize(Stream<T> elements, int size) {
+			if (elements == null || size == 0)
+				return new ArrayList<T>();
+
+			return sample(elements.iterator(), size == Integer.MIN_VALUE ? Integer.MAX_VALUE : Math.abs(size));
+		}
+
+		private <T> List<T> sample(Iterator<T> it, int amount) {
+			List<T> reservoir = new ArrayList<T>(Math.min(amount, 16));
+			while (reservoir.size() < amount && it.hasNext())
+				reservoir.add(it.next());
+			if (!it.hasNext())
+				return reservoir;
+
+			Random r = getRandom();
+			double w = Math.exp(Math.log(nextOpen(r)) / amount);
+			while (true) {
+				// the amount of elements to skip before the next one that goes into the reservoir
+				double skip = Math.floor(Math.log(nextOpen(r)) / Math.log(1 - w));
+				for (long i = 0; i < skip; i++) {
+					if (!it.hasNext())
+						return reservoir;
+					it.next();
+				}
+				if (!it.hasNext())
+					return reservoir;
+
+				reservoir.set(r.nextInt(amount), it.next());
+				w *= Math.exp(Math.log(nextOpen(r)) / amount);
+			}
+		}
+
+		// a random number in (0, 1), as the logarithm of 0 is not finite
+		private static double nextOpen(Random r) {
+			double d;
+			do
+				d = r.nextDouble();
+			while (d == 0);
+			return d;
+		}
+
+	}
+
 	/**
 	 * Does the given list contain an element?
 	 * 
@@ -293,14 +684,90 @@ public class ListUtil {
 		if (list == null || list.isEmpty())
 			return "";
 
-		String result = "";
-		for (int i = 0; i < list.size(); i++) {
-			result += describer.apply(list.get(i));
-			if (i < list.size() - 1)
-				result += delimiter;
+		// describe every item first, so the buffer can be sized exactly
+		String[] descriptions = new String[list.size()];
+		int length = delimiter.length() * (descriptions.length - 1), i = 0;
+		for (T item : list) {
+			descriptions[i] = String.valueOf(describer.apply(item));
+			length += descriptions[i++].length();
+		}
+
+		StringBuilder result = new StringBuilder(length);
+		for (i = 0; i < descriptions.length; i++) {
+			if (i > 0)
+				result.append(delimiter);
+			result.append(descriptions[i]);
 		}
 
-		return result;
+		return result.toString();
+	}
+
+	/**
+	 * Join all elements in the list together, separated by a delimiter, and append the result to the given {@link Appendable}. Each item
+	 * is appended as soon as it is described, so the result is never built in full.
+	 * 
+	 * @param out
+	 *            The Appendable, such as a {@link java.io.Writer Writer} or {@link StringBuilder}
+	 * @param list
+	 *            The list
+	 * @param delimiter
+	 *            The delimiter
+	 * @return The given Appendable.
+	 * @throws UncheckedIOException
+	 *             If the Appendable throws an {@link IOException}
+	 */
+	public static <T, A extends Appendable> A joinTo(A out, List<T> list, String delimiter) {
+		return joinTo(out, list, (item) -> "" + item, delimiter);
+	}
+
+	/**
+	 * Join all elements in the list together, separated by a delimiter, and append the result to the given {@link Appendable}. Each item
+	 * is appended as soon as it is described, so the result is never built in full.
+	 * 
+	 * @param out
+	 *            The Appendable, such as a {@link java.io.Writer Writer} or {@link StringBuilder}
+	 * @param list
+	 *            The list
+	 * @param describer
+	 *            A Function that takes in an item of the list and returns a String that describes that item.
+	 * @param delimiter
+	 *            The delimiter
+	 * @return The given Appendable.
+	 * @throws UncheckedIOException
+	 *             If the Appendable throws an {@link IOException}
+	 */
+	public static <T, A extends Appendable> A joinTo(A out, List<T> list, Function<T, String> describer, String delimiter) {
+		if (list == null || list.isEmpty())
+			return out;
+
+		try {
+			boolean first = true;
+			for (T item : list) {
+				if (!first)
+					out.append(delimiter);
+				out.append(String.valueOf(describer.apply(item)));
+				first = false;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return out;
+	}
+
+	/**
+	 * Get a {@link Collector} that joins the elements of a stream together, separated by a delimiter, as
+	 * {@link #join(List, Function, String)} does.
+	 * 
+	 * @param describer
+	 *            A Function that takes in an item of the stream and returns a String that describes that item.
+	 * @param delimiter
+	 *            The delimiter
+	 * @return The Collector.
+	 */
+	public static <T> Collector<T, ?, String> joining(Function<T, String> describer, String delimiter) {
+		return Collector.of(() -> new StringJoiner(delimiter), (joiner, item) -> joiner.add(String.valueOf(describer.apply(item))),
+			StringJoiner::merge, StringJoiner::toString);
 	}
 
 }
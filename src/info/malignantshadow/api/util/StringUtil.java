@@ -1,7 +1,13 @@
 package info.malignantshadow.api.util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import info.malignantshadow.api.util.aliases.Aliasable;
 import info.malignantshadow.api.util.aliases.Nameable;
@@ -14,6 +20,13 @@ import info.malignantshadow.api.util.aliases.Nameable;
  */
 public class StringUtil {
 	
+	// arrays smaller than this are faster to search without the index
+	private static final int ENUM_INDEX_THRESHOLD = 16;
+	
+	// words that are not capitalized by toProperCase
+	private static final IgnoreCaseSet STOP_WORDS = IgnoreCaseSet.of("a", "an", "and", "but", "is", "are", "for", "nor", "of", "or", "so", "the",
+		"to", "yet", "by");
+	
 	/**
 	 * Test if a string leniently matches another. The test string can be prefixed with the following characters:
 	 * <ul>
@@ -28,45 +41,65 @@ public class StringUtil {
 	 * <li>! - Recursive. The method will return the result of {@code lenientMatch(s, sub)} where {@code sub} is equal to {@code test.substring(1)}}</li>
 	 * <li></li>
 	 * </ul>
+	 * To test many strings against the same test string, {@link LenientMatcher#compile(String) compile} it once instead. Compiled matchers
+	 * can also opt in to {@link LenientMatcher.Operator#GLOB glob} patterns, see {@link LenientMatcher#compile(String, boolean)}.
 	 * 
 	 * @param s
 	 * @param test
 	 * @return
 	 */
 	public static boolean lenientMatch(String s, String test) {
-		if (test == null ^ s == null) //if one (but not both) are null
-			return false;
-		
-		if ((test == null && s == null) || (s.isEmpty() && test.isEmpty()))
-			return true;
+		return LenientMatcher.matches(s, test);
+	}
+	
+	/**
+	 * Get the constants of the given enum whose name (or aliases) leniently match the given name, in the order they are declared.
+	 * 
+	 * <p>
+	 * The names and aliases of the constants are indexed the first time the enum is searched, so most searches only test a few of them. For
+	 * this reason, the names and aliases of the constants must not change.
+	 * </p>
+	 * 
+	 * @param type
+	 *            The class of the enum
+	 * @param name
+	 *            The name
+	 * @return A List of matching values.
+	 */
+	public static <E extends Enum<E>> List<E> lenientEnumSearch(Class<E> type, String name) {
+		return lenientEnumSearch(type, name, false);
+	}
+	
+	/**
+	 * Get the constants of the given enum whose name (or aliases) leniently match the given name, in the order they are declared. Like
+	 * {@link #lenientEnumSearch(Class, String)}, this uses an index of the names and aliases of the constants, so they must not change.
+	 * 
+	 * @param type
+	 *            The class of the enum
+	 * @param name
+	 *            The name
+	 * @param globs
+	 *            {@code true} if a leading {@code #} makes the name a {@link LenientMatcher.Operator#GLOB glob}
+	 * @return A List of matching values.
+	 */
+	public static <E extends Enum<E>> List<E> lenientEnumSearch(Class<E> type, String name, boolean globs) {
+		EnumSearchIndex<E> index = EnumSearchIndex.of(type);
+		BitSet found = index.search(name, globs);
+		List<E> list = new ArrayList<E>(found.cardinality());
+		for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1))
+			list.add(index.get(i));
 		
-		char first = test.charAt(0);
-		String sub = test.substring(1);
-		if (first == '~') // "similar" [.contains()]
-			return s.toLowerCase().contains(sub.toLowerCase());
-		if (first == '*') // ends with
-			return s.toLowerCase().endsWith(sub.toLowerCase());
-		if (first == '$') //strict ends with
-			return s.endsWith(sub);
-		if (first == '^') //starts with
-			return s.toLowerCase().startsWith(sub.toLowerCase());
-		if (first == '%') //strict starts with
-			return s.startsWith(sub);
-		if (first == '=') // strict equals
-			return s.equals(sub);
-		if (first == '>') //compareTo: sub is greater than s
-			return sub.compareTo(s) >= 1;
-		if (first == '<') //compareTo: sub is less than s
-			return sub.compareTo(s) <= -1;
-		if (first == '!') //not 
-			return !lenientMatch(s, sub); //the downside to this is that "arg=!!!!!!!!!value" is completely valid
-			
-		return s.equalsIgnoreCase(test);
+		return list;
 	}
 	
 	/**
 	 * Iterate through an array of enum values and return any values whose name (or aliases) leniently match the given name.
 	 * 
+	 * <p>
+	 * Large arrays are searched with the same index as {@link #lenientEnumSearch(Class, String)}, so the names and aliases of the constants
+	 * must not change.
+	 * </p>
+	 * 
 	 * @param values
 	 *            The values
 	 * @param name
@@ -74,6 +107,19 @@ public class StringUtil {
 	 * @return A List of matching values.
 	 */
 	public static <E extends Enum<E>> List<E> lenientEnumSearch(E[] values, String name) {
+		if (values.length < ENUM_INDEX_THRESHOLD)
+			return lenientEnumScan(values, name);
+		
+		BitSet found = EnumSearchIndex.of(values[0].getDeclaringClass()).search(name);
+		List<E> list = new ArrayList<E>();
+		for (E e : values)
+			if (found.get(e.ordinal()))
+				list.add(e);
+		
+		return list;
+	}
+	
+	private static <E extends Enum<E>> List<E> lenientEnumScan(E[] values, String name) {
 		List<E> list = new ArrayList<E>();
 		for (E e : values) {
 			if (lenientMatch(e.name(), name))
@@ -118,7 +164,48 @@ public class StringUtil {
 	}
 	
 	/**
-	 * Apply word wrapping to the given string.
+	 * Get the constants of the given enum whose name (or aliases) leniently match the given name. Like
+	 * {@link #lenientEnumSearch(Class, String)}, this uses an index of the names and aliases of the constants, so they must not change.
+	 * 
+	 * @param type
+	 *            The class of the enum
+	 * @param name
+	 *            The name
+	 * @return A set of matching values.
+	 */
+	public static <E extends Enum<E>> EnumSet<E> lenientEnumSet(Class<E> type, String name) {
+		return lenientEnumSet(type, new String[] { name });
+	}
+	
+	/**
+	 * Get the constants of the given enum whose name (or aliases) leniently match any of the given names. Unlike
+	 * {@link #lenientEnumSearch(Enum[], String[])}, each constant is only included once. Like {@link #lenientEnumSearch(Class, String)}, this
+	 * uses an index of the names and aliases of the constants, so they must not change.
+	 * 
+	 * @param type
+	 *            The class of the enum
+	 * @param input
+	 *            The names
+	 * @return A set of matching values.
+	 */
+	public static <E extends Enum<E>> EnumSet<E> lenientEnumSet(Class<E> type, String[] input) {
+		EnumSet<E> set = EnumSet.noneOf(type);
+		if (input == null)
+			return set;
+		
+		EnumSearchIndex<E> index = EnumSearchIndex.of(type);
+		BitSet found = new BitSet(index.size());
+		for (String s : input)
+			found.or(index.search(s));
+		for (int i = found.nextSetBit(0); i >= 0; i = found.nextSetBit(i + 1))
+			set.add(index.get(i));
+		
+		return set;
+	}
+	
+	/**
+	 * Apply word wrapping to the given string. Strings that already fit are returned as they are, otherwise the result is the same as
+	 * {@link #wrap(CharSequence, int, Appendable)}.
 	 * 
 	 * @param string
 	 *            The text to wrap
@@ -130,19 +217,104 @@ public class StringUtil {
 		if (string == null || string.isEmpty() || string.length() <= maxLength)
 			return string;
 		
-		String[] split = string.split("\\s+");
-		int counter = 0;
-		String newString = "";
-		for (String s : split) {
-			if (counter + s.length() + 1 <= maxLength)
-				newString += s + " ";
-			else {
-				newString += "\n" + s + " ";
-				counter = 0;
+		return wrap(string, maxLength, new StringBuilder(string.length())).toString();
+	}
+	
+	/**
+	 * Apply word wrapping to the given text and write the result to the given Appendable. Words are separated by whitespace; each line holds
+	 * as many words as fit in {@code maxLength} characters, separated by a single space. Lines are separated by a newline character, and have
+	 * no leading or trailing whitespace. A word longer than {@code maxLength} is put on a line of its own.
+	 * 
+	 * @param text
+	 *            The text to wrap
+	 * @param maxLength
+	 *            The maximum character length of a line.
+	 * @param out
+	 *            The Appendable to write to
+	 * @return The Appendable.
+	 * @throws UncheckedIOException
+	 *             If the Appendable throws an IOException.
+	 */
+	public static <A extends Appendable> A wrap(CharSequence text, int maxLength, A out) {
+		if (text == null)
+			return out;
+		
+		try {
+			int length = 0;
+			for (int start = skipWhitespace(text, 0); start < text.length(); start = skipWhitespace(text, start)) {
+				int end = skipWord(text, start);
+				if (length == 0)
+					length = end - start;
+				else if (length + 1 + end - start <= maxLength) {
+					out.append(' ');
+					length += 1 + end - start;
+				} else {
+					out.append('\n');
+					length = end - start;
+				}
+				out.append(text, start, end);
+				start = end;
 			}
-			counter += s.length() + 1;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
 		}
-		return newString;
+		return out;
+	}
+	
+	/**
+	 * Apply word wrapping to the given text, one line at a time. The lines are the same as the ones written by
+	 * {@link #wrap(CharSequence, int, Appendable)}, and each line is only built when it is requested.
+	 * 
+	 * @param text
+	 *            The text to wrap
+	 * @param maxLength
+	 *            The maximum character length of a line.
+	 * @return An Iterator over the lines.
+	 */
+	public static Iterator<String> wrapLines(CharSequence text, int maxLength) {
+		return new Iterator<String>() {
+			
+			private int _start = text == null ? 0 : skipWhitespace(text, 0);
+			
+			@Override
+			public boolean hasNext() {
+				return text != null && _start < text.length();
+			}
+			
+			@Override
+			public String next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				
+				StringBuilder line = new StringBuilder(Math.max(16, maxLength));
+				do {
+					int end = skipWord(text, _start);
+					if (line.length() > 0)
+						line.append(' ');
+					line.append(text, _start, end);
+					_start = skipWhitespace(text, end);
+				} while (_start < text.length() && line.length() + 1 + skipWord(text, _start) - _start <= maxLength);
+				return line.toString();
+			}
+			
+		};
+	}
+	
+	// the whitespace matched by \s
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || (c >= '\t' && c <= '\r');
+	}
+	
+	private static int skipWhitespace(CharSequence s, int from) {
+		while (from < s.length() && isWhitespace(s.charAt(from)))
+			from++;
+		return from;
+	}
+	
+	private static int skipWord(CharSequence s, int from) {
+		while (from < s.length() && !isWhitespace(s.charAt(from)))
+			from++;
+		return from;
 	}
 	
 	/**
@@ -155,27 +327,48 @@ public class StringUtil {
 	public static String toProperCase(String s) {
 		if (s.isEmpty())
 			return "";
-		String[] unimportant = new String[] { "a", "an", "and", "but", "is",
-			"are", "for", "nor", "of", "or", "so", "the", "to", "yet", "by" };
-		String[] split = s.split("\\s+");
-		String result = "";
-		for (int i = 0; i < split.length; i++) {
-			String word = split[i];
-			boolean capitalize = true;
-			for (String str : unimportant) {
-				if (str.equalsIgnoreCase(word)) {
-					if (i > 0 && i < split.length - 1) {
-						capitalize = false;
-						break;
-					}
-				}
-			}
-			if (capitalize || i == 0 || i == split.length - 1) //first and last words are always capital
-				result += capitalize(word) + " ";
-			else
-				result += word.toLowerCase() + " ";
+		
+		return toProperCase(s, new StringBuilder(s.length()));
+	}
+	
+	/**
+	 * Make each string in the given list proper case, as {@link #toProperCase(String)} does.
+	 * 
+	 * @param strings
+	 *            The strings
+	 * @return A new List with the proper-cased strings. {@code null} elements stay {@code null}.
+	 */
+	public static List<String> toProperCase(List<String> strings) {
+		List<String> result = new ArrayList<String>(strings.size());
+		StringBuilder sb = new StringBuilder();
+		for (String s : strings)
+			result.add(s == null ? null : toProperCase(s, sb));
+		
+		return result;
+	}
+	
+	private static String toProperCase(String s, StringBuilder sb) {
+		sb.setLength(0);
+		int lastStart = 0;
+		boolean lastLower = false;
+		for (int start = skipWhitespace(s, 0); start < s.length(); start = skipWhitespace(s, start)) {
+			int end = skipWord(s, start);
+			boolean first = sb.length() == 0;
+			if (!first)
+				sb.append(' ');
+			
+			lastStart = sb.length();
+			lastLower = !first && STOP_WORDS.contains(s, start, end);
+			char c = s.charAt(start);
+			sb.append(lastLower ? Character.toLowerCase(c) : Character.toUpperCase(c));
+			for (int i = start + 1; i < end; i++)
+				sb.append(Character.toLowerCase(s.charAt(i)));
+			start = end;
 		}
-		return result.trim();
+		
+		if (lastLower) // the last word is always capitalized
+			sb.setCharAt(lastStart, Character.toUpperCase(sb.charAt(lastStart)));
+		return sb.toString();
 	}
 	
 	/**
@@ -201,7 +394,38 @@ public class StringUtil {
 	}
 	
 	/**
-	 * Tests if any of the given test string match ({@link String#equalsIgnoreCase(String)}) {@code s}
+	 * Fold the case of the given string. Two strings are equal ignoring case (as per {@link String#equalsIgnoreCase(String)}) if and only if
+	 * their folded forms are equal, so folded strings can be used as keys for case-insensitive lookups.
+	 * 
+	 * @param s
+	 *            The string
+	 * @return The folded string
+	 */
+	public static String foldCase(CharSequence s) {
+		StringBuilder sb = new StringBuilder(s.length());
+		for (int i = 0; i < s.length(); i++)
+			sb.append(foldCase(s.charAt(i)));
+		return sb.toString();
+	}
+	
+	/**
+	 * Fold the case of the given character, see {@link #foldCase(CharSequence)}.
+	 * 
+	 * @param c
+	 *            The character
+	 * @return The folded character
+	 */
+	public static char foldCase(char c) {
+		if (c < 128)
+			return c >= 'A' && c <= 'Z' ? (char) (c + 32) : c;
+		
+		// String.regionMatches(true, ...) compares the upper case forms, and then the lower case forms of those
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+	
+	/**
+	 * Tests if any of the given test string match ({@link String#equalsIgnoreCase(String)}) {@code s}. To test against the same strings many
+	 * times, create an {@link IgnoreCaseSet} of them instead.
 	 * 
 	 * @param s
 	 *            The string
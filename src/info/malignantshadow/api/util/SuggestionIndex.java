@@ -0,0 +1,310 @@
+package info.malignantshadow.api.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import info.malignantshadow.api.util.aliases.Aliasable;
+import info.malignantshadow.api.util.aliases.Nameable;
+
+/**
+ * Finds the names closest to a misspelled name, to suggest what was meant when a lookup finds nothing. Distances are case-insensitive
+ * Levenshtein distances (the amount of single character insertions, deletions and substitutions between two names).
+ * 
+ * <p>
+ * The names are kept in a BK-tree, so a search only measures the distance to the names that can be within the maximum distance instead of to
+ * every name. Names can be added at any time, but an index is not thread-safe while names are being added. The indexes returned by
+ * {@link #of(Class)} are built once and can be shared.
+ * </p>
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ * @param <T>
+ *            The type of value the names belong to
+ */
+public class SuggestionIndex<T> {
+	
+	/**
+	 * Represents a single suggestion.
+	 * 
+	 * @author MalignantShadow (Caleb Downs)
+	 *
+	 * @param <T>
+	 *            The type of value
+	 */
+	public static class Suggestion<T> {
+		
+		private String _name;
+		private T _value;
+		private int _distance, _order;
+		
+		private Suggestion(String name, T value, int distance, int order) {
+			_name = name;
+			_value = value;
+			_distance = distance;
+			_order = order;
+		}
+		
+		/**
+		 * Get the suggested name.
+		 * 
+		 * @return The name.
+		 */
+		public String getName() {
+			return _name;
+		}
+		
+		/**
+		 * Get the value the suggested name belongs to.
+		 * 
+		 * @return The value.
+		 */
+		public T getValue() {
+			return _value;
+		}
+		
+		/**
+		 * Get the distance between the searched name and the suggested name.
+		 * 
+		 * @return The distance.
+		 */
+		public int getDistance() {
+			return _distance;
+		}
+		
+		@Override
+		public String toString() {
+			return _name + " (" + _distance + ")";
+		}
+		
+	}
+	
+	private static final ClassValue<SuggestionIndex<?>> ENUMS = new ClassValue<SuggestionIndex<?>>() {
+		
+		@Override
+		protected SuggestionIndex<?> computeValue(Class<?> type) {
+			SuggestionIndex<Object> index = new SuggestionIndex<Object>();
+			for (Object e : type.getEnumConstants())
+				for (String name : EnumSearchIndex.getNames((Enum<?>) e))
+					index.add(name, e);
+			return index;
+		}
+		
+	};
+	
+	private Node<T> _root;
+	private int _size;
+	
+	/**
+	 * Create a new empty index.
+	 */
+	public SuggestionIndex() {
+	}
+	
+	/**
+	 * Get the index of the names of the constants of the given enum. This includes the {@link Enum#name() name} of each constant, and its
+	 * {@link Nameable#getName() name} and {@link Aliasable#getAliases() aliases} if it has them. The index is built the first time it is
+	 * requested, so the names and aliases of the constants must not change.
+	 * 
+	 * @param type
+	 *            The class of the enum
+	 * @return The index.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <E extends Enum<E>> SuggestionIndex<E> of(Class<E> type) {
+		return (SuggestionIndex<E>) ENUMS.get(type);
+	}
+	
+	/**
+	 * Create an index of the names (and aliases, if they have any) of the given values.
+	 * 
+	 * @param values
+	 *            The values
+	 * @return The index.
+	 */
+	public static <T extends Nameable> SuggestionIndex<T> of(Iterable<? extends T> values) {
+		SuggestionIndex<T> index = new SuggestionIndex<T>();
+		for (T t : values) {
+			index.add(t.getName(), t);
+			if (t instanceof Aliasable && ((Aliasable) t).getAliases() != null)
+				for (String alias : ((Aliasable) t).getAliases())
+					index.add(alias, t);
+		}
+		return index;
+	}
+	
+	/**
+	 * Add a name to this index.
+	 * 
+	 * @param name
+	 *            The name. If it is {@code null}, nothing is added.
+	 * @param value
+	 *            The value the name belongs to
+	 */
+	public void add(String name, T value) {
+		if (name == null)
+			return;
+		
+		String key = StringUtil.foldCase(name);
+		Entry<T> entry = new Entry<T>(name, value, _size++);
+		if (_root == null) {
+			_root = new Node<T>(key, entry);
+			return;
+		}
+		
+		int[][] rows = rows(key);
+		Node<T> node = _root;
+		while (true) {
+			int distance = distance(key, node._key, rows);
+			if (distance == 0) {
+				node._entries.add(entry);
+				return;
+			}
+			
+			if (distance >= node._children.length)
+				node._children = Arrays.copyOf(node._children, distance + 1);
+			
+			Node<T> child = node._children[distance];
+			if (child == null) {
+				node._children[distance] = new Node<T>(key, entry);
+				return;
+			}
+			node = child;
+		}
+	}
+	
+	/**
+	 * Get the amount of names in this index.
+	 * 
+	 * @return The size.
+	 */
+	public int size() {
+		return _size;
+	}
+	
+	/**
+	 * Get the names closest to the given name. Each value is only suggested once, by its closest name. Suggestions are sorted by distance,
+	 * and suggestions with the same distance are in the order their names were added.
+	 * 
+	 * @param name
+	 *            The name
+	 * @param maxDistance
+	 *            The maximum distance between the given name and a suggested name
+	 * @param limit
+	 *            The maximum amount of suggestions, or a negative number for no limit
+	 * @return The suggestions.
+	 */
+	public List<Suggestion<T>> suggest(String name, int maxDistance, int limit) {
+		List<Suggestion<T>> found = new ArrayList<Suggestion<T>>();
+		if (_root == null || name == null || limit == 0 || maxDistance < 0)
+			return found;
+		
+		String key = StringUtil.foldCase(name);
+		int[][] rows = rows(key);
+		Deque<Node<T>> stack = new ArrayDeque<Node<T>>();
+		stack.push(_root);
+		while (!stack.isEmpty()) {
+			Node<T> node = stack.pop();
+			int distance = distance(key, node._key, rows);
+			if (distance <= maxDistance)
+				for (Entry<T> e : node._entries)
+					found.add(new Suggestion<T>(e._name, e._value, distance, e._order));
+			
+			// by the triangle inequality, only children this far from the node can be within maxDistance of the name
+			int to = Math.min(node._children.length - 1, distance + maxDistance);
+			for (int i = Math.max(1, distance - maxDistance); i <= to; i++)
+				if (node._children[i] != null)
+					stack.push(node._children[i]);
+		}
+		
+		found.sort((a, b) -> a._distance != b._distance ? a._distance - b._distance : a._order - b._order);
+		Set<T> suggested = new HashSet<T>();
+		List<Suggestion<T>> result = new ArrayList<Suggestion<T>>();
+		for (Suggestion<T> s : found) {
+			if (limit >= 0 && result.size() == limit)
+				break;
+			if (suggested.add(s._value))
+				result.add(s);
+		}
+		return result;
+	}
+	
+	/**
+	 * Get the values whose names are closest to the given name.
+	 * 
+	 * @param name
+	 *            The name
+	 * @param maxDistance
+	 *            The maximum distance between the given name and a suggested name
+	 * @param limit
+	 *            The maximum amount of values, or a negative number for no limit
+	 * @return The values, closest first.
+	 * @see #suggest(String, int, int)
+	 */
+	public List<T> suggestValues(String name, int maxDistance, int limit) {
+		List<T> values = new ArrayList<T>();
+		for (Suggestion<T> s : suggest(name, maxDistance, limit))
+			values.add(s._value);
+		return values;
+	}
+	
+	private static int[][] rows(String key) {
+		return new int[][] { new int[key.length() + 1], new int[key.length() + 1] };
+	}
+	
+	// the Levenshtein distance between a and b, using the given rows (of a.length() + 1 elements) as scratch space
+	private static int distance(String a, String b, int[][] rows) {
+		int[] previous = rows[0], current = rows[1];
+		for (int i = 0; i <= a.length(); i++)
+			previous[i] = i;
+		
+		for (int j = 1; j <= b.length(); j++) {
+			current[0] = j;
+			char c = b.charAt(j - 1);
+			for (int i = 1; i <= a.length(); i++) {
+				int cost = a.charAt(i - 1) == c ? 0 : 1;
+				current[i] = Math.min(Math.min(current[i - 1], previous[i]) + 1, previous[i - 1] + cost);
+			}
+			
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return previous[a.length()];
+	}
+	
+	private static class Entry<T> {
+		
+		private String _name;
+		private T _value;
+		private int _order;
+		
+		Entry(String name, T value, int order) {
+			_name = name;
+			_value = value;
+			_order = order;
+		}
+		
+	}
+	
+	private static class Node<T> {
+		
+		private String _key;
+		private List<Entry<T>> _entries;
+		private Node<T>[] _children;
+		
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Node(String key, Entry<T> entry) {
+			_key = key;
+			_entries = new ArrayList<Entry<T>>(1);
+			_entries.add(entry);
+			_children = new Node[0];
+		}
+		
+	}
+	
+}
@@ -207,6 +207,16 @@ public class Argument {
 		 */
 		public R getValue(String input);
 		
+		/**
+		 * Are the values of this type immutable? Only values of immutable types may be cached and handed to more than one caller, so
+		 * types are assumed to be mutable unless they say otherwise. See {@link ArgumentTypes#immutable(Type)}.
+		 * 
+		 * @return {@code true} if a parsed value can never be modified.
+		 */
+		public default boolean isImmutable() {
+			return false;
+		}
+		
 	}
 	
 }
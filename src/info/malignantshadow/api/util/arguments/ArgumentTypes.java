@@ -5,6 +5,7 @@ import java.util.regex.Matcher;
 import info.malignantshadow.api.util.Time;
 import info.malignantshadow.api.util.aliases.Aliasable;
 import info.malignantshadow.api.util.selectors.Selector;
+import info.malignantshadow.api.util.selectors.SelectorCache;
 
 /**
  * A Utility class holding command argument types representing some Java primitives (and String)
@@ -20,21 +21,50 @@ public final class ArgumentTypes {
 	private ArgumentTypes() {
 	}
 	
+	/**
+	 * Mark the given argument type as {@link Argument.Type#isImmutable() immutable}. Only do this if none of the values it returns can be
+	 * modified, because their callers may share them.
+	 * 
+	 * @param type
+	 *            The argument type
+	 * @param <R>
+	 *            The type of value
+	 * @return An immutable argument type that parses input the same way.
+	 */
+	public static <R> Argument.Type<R> immutable(Argument.Type<R> type) {
+		if (type.isImmutable())
+			return type;
+		
+		return new Argument.Type<R>() {
+			
+			@Override
+			public R getValue(String input) {
+				return type.getValue(input);
+			}
+			
+			@Override
+			public boolean isImmutable() {
+				return true;
+			}
+			
+		};
+	}
+	
 	/**
 	 * Parse the argument as a String (return the input without modification)
 	 */
-	public static final Argument.Type<String> STRING = (input) -> input;
+	public static final Argument.Type<String> STRING = immutable((input) -> input);
 	
 	/**
 	 * Parse the argument as an Integer (or null if it cannot be parsed)
 	 */
-	public static final Argument.Type<Integer> INT = (input) -> {
+	public static final Argument.Type<Integer> INT = immutable((input) -> {
 		try {
 			return Integer.valueOf(input);
 		} catch (NumberFormatException e) {
 			return null;
 		}
-	};
+	});
 	
 	/**
 	 * Parse the argument as a {@link Time} object.
@@ -72,7 +102,7 @@ public final class ArgumentTypes {
 	 * @return A new argument type that represents bitwise flag parsing.
 	 */
 	public static final Argument.Type<Integer> bitwiseFlag(Argument.Type<Integer> flagType) {
-		return (input) -> {
+		return immutable((input) -> {
 			int bits = 0;
 			Object[] values = arrayOf(flagType).getValue(input);
 			for (Object v : values) {
@@ -81,19 +111,19 @@ public final class ArgumentTypes {
 					bits |= i;
 			}
 			return bits;
-		};
+		});
 	}
 	
 	/**
 	 * Parse the argument as a Double (or null if it cannot be parsed)
 	 */
-	public static final Argument.Type<Double> DOUBLE = (input) -> {
+	public static final Argument.Type<Double> DOUBLE = immutable((input) -> {
 		try {
 			return Double.valueOf(input);
 		} catch (NumberFormatException e) {
 			return null;
 		}
-	};
+	});
 	
 	/**
 	 * Parse the argument as an Integer or Double.
@@ -103,23 +133,23 @@ public final class ArgumentTypes {
 	 * if that fails (the value is null) then it will parsed as a double (via {@link #DOUBLE})
 	 * </p>
 	 */
-	public static final Argument.Type<Number> NUMBER = (input) -> {
+	public static final Argument.Type<Number> NUMBER = immutable((input) -> {
 		Number value = INT.getValue(input);
 		if (value != null)
 			return value;
 		return DOUBLE.getValue(input);
-	};
+	});
 	
 	/**
 	 * Parse the argument as an {@link Integer}Integer (using {@link #NUMBER} and the returning {@link Number#intValue() intValue()} if it is not{@code null}).
 	 * If the input would have had a {@link Double} value, it is coerced into an Integer.
 	 */
-	public static final Argument.Type<Integer> INT_LENIENT = (input) -> {
+	public static final Argument.Type<Integer> INT_LENIENT = immutable((input) -> {
 		Number number = NUMBER.getValue(input);
 		if (number == null)
 			return null;
 		return number.intValue();
-	};
+	});
 	
 	/**
 	 * Parse the argument as a Boolean (or null if it cannot be parsed).
@@ -133,14 +163,14 @@ public final class ArgumentTypes {
 	 * <li>Any other value will yield <code>null</code> as a result</li>
 	 * </ul>
 	 */
-	public static final Argument.Type<Boolean> BOOLEAN = (input) -> {
+	public static final Argument.Type<Boolean> BOOLEAN = immutable((input) -> {
 		if (input.equalsIgnoreCase("true") || input.equalsIgnoreCase("yes") || input.equalsIgnoreCase("on"))
 			return true;
 		else if (input.equalsIgnoreCase("false") || input.equalsIgnoreCase("no") || input.equalsIgnoreCase("off"))
 			return false;
 		else
 			return null;
-	};
+	});
 	
 	/**
 	 * Parse the argument as a Boolean. If the input is {@code null} or empty, the default is returned. Otherwise, the return value
@@ -151,11 +181,11 @@ public final class ArgumentTypes {
 	 * @return A lenient argument type for booleans.
 	 */
 	public static final Argument.Type<Boolean> BOOLEAN_LENIENT(boolean def) {
-		return (input) -> {
+		return immutable((input) -> {
 			if (input == null || input.equals(""))
 				return def;
 			return BOOLEAN.getValue(input);
-		};
+		});
 	}
 	
 	/**
@@ -171,7 +201,7 @@ public final class ArgumentTypes {
 	 * </ul>
 	 * This will never return <code>null</code>, unless the input itself was <code>null</code>.
 	 */
-	public static final Argument.Type<Object> PRIMTIVE = (input) -> {
+	public static final Argument.Type<Object> PRIMTIVE = immutable((input) -> {
 		Boolean b = BOOLEAN.getValue(input);
 		if (b != null)
 			return b;
@@ -181,13 +211,29 @@ public final class ArgumentTypes {
 			return n;
 		
 		return input;
-	};
+	});
 	
 	/**
 	 * Parse the argument as a {@link Selector}
 	 */
 	public static final Argument.Type<Selector> SELECTOR = (input) -> Selector.compile(input);
 	
+	/**
+	 * Parse the argument as a {@link Selector}, using the {@link SelectorCache#getShared() shared cache}. The returned selector is immutable.
+	 */
+	public static final Argument.Type<Selector> SELECTOR_CACHED = cachedSelector(SelectorCache.getShared());
+	
+	/**
+	 * Parse the argument as a {@link Selector}, using the given cache. The returned selector is immutable.
+	 * 
+	 * @param cache
+	 *            The cache to compile the selector with
+	 * @return A {@link Argument.Type} that represents cached selector parsing
+	 */
+	public static final Argument.Type<Selector> cachedSelector(SelectorCache cache) {
+		return immutable((input) -> cache.get(input));
+	}
+	
 	/**
 	 * Parse the argument as a {@link info.malignantshadow.api.util.random.Pattern Pattern}
 	 * 
@@ -274,7 +320,7 @@ public final class ArgumentTypes {
 	 * @return A {@link Argument.Type} that represents the Enum search
 	 */
 	public static final <E extends Enum<E>> Argument.Type<E> enumValue(E[] enumValues, boolean caseSensitive) {
-		return (input) -> {
+		return immutable((input) -> {
 			for (E e : enumValues) {
 				if (e == null)
 					continue;
@@ -294,7 +340,7 @@ public final class ArgumentTypes {
 					return e;
 			}
 			return null;
-		};
+		});
 	}
 	
 	/**
@@ -0,0 +1,63 @@
+package info.malignantshadow.api.util.selectors;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link CharSequence} view of bytes in a {@link ByteBuffer}, where each byte is one character. This is only correct for ASCII text, which
+ * is all that a valid selector may contain.
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ */
+class AsciiSequence implements CharSequence {
+	
+	private ByteBuffer _buffer;
+	private int _offset, _length;
+	
+	/**
+	 * Create a view of the bytes between the position and limit of the given buffer.
+	 * 
+	 * @param buffer
+	 *            The buffer
+	 */
+	AsciiSequence(ByteBuffer buffer) {
+		this(buffer, buffer.position(), buffer.remaining());
+	}
+	
+	private AsciiSequence(ByteBuffer buffer, int offset, int length) {
+		_buffer = buffer;
+		_offset = offset;
+		_length = length;
+	}
+	
+	@Override
+	public int length() {
+		return _length;
+	}
+	
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= _length)
+			throw new IndexOutOfBoundsException("index " + index + ", length " + _length);
+		
+		return (char) (_buffer.get(_offset + index) & 0xFF);
+	}
+	
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > _length || start > end)
+			throw new IndexOutOfBoundsException(String.format("start %d, end %d, length %d", start, end, _length));
+		
+		return new AsciiSequence(_buffer, _offset + start, end - start);
+	}
+	
+	@Override
+	public String toString() {
+		byte[] bytes = new byte[_length];
+		for (int i = 0; i < _length; i++)
+			bytes[i] = _buffer.get(_offset + i);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+	
+}
@@ -0,0 +1,56 @@
+package info.malignantshadow.api.util.selectors;
+
+/**
+ * A view of a range of another {@link CharSequence}. Nothing is copied until {@link #toString()} is called.
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ */
+class CharSlice implements CharSequence {
+	
+	private CharSequence _source;
+	private int _start, _end;
+	
+	/**
+	 * Create a view of the given range of the given sequence.
+	 * 
+	 * @param source
+	 *            The sequence
+	 * @param start
+	 *            The start index (inclusive)
+	 * @param end
+	 *            The end index (exclusive)
+	 */
+	CharSlice(CharSequence source, int start, int end) {
+		_source = source;
+		_start = start;
+		_end = end;
+	}
+	
+	@Override
+	public int length() {
+		return _end - _start;
+	}
+	
+	@Override
+	public char charAt(int index) {
+		if (index < 0 || index >= length())
+			throw new IndexOutOfBoundsException("index " + index + ", length " + length());
+		
+		return _source.charAt(_start + index);
+	}
+	
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length() || start > end)
+			throw new IndexOutOfBoundsException(String.format("start %d, end %d, length %d", start, end, length()));
+		
+		return new CharSlice(_source, _start + start, _start + end);
+	}
+	
+	@Override
+	public String toString() {
+		return _source.subSequence(_start, _end).toString();
+	}
+	
+}
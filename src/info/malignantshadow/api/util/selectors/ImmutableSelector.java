@@ -0,0 +1,70 @@
+package info.malignantshadow.api.util.selectors;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Represents a {@link Selector} that cannot be modified. Instances of this class can safely be shared between threads, e.g. when they are
+ * held in a {@link SelectorCache}.
+ * 
+ * <p>
+ * Methods that would modify the selector (or its attached data) throw an {@link UnsupportedOperationException}. The input arrays of the
+ * arguments are copied when the selector is created, but must not be modified by callers of {@link SelectorArgument#getInput()}.
+ * </p>
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ */
+public class ImmutableSelector extends Selector {
+	
+	/**
+	 * Create an immutable copy of the given selector.
+	 * 
+	 * @param selector
+	 *            The selector to copy
+	 */
+	public ImmutableSelector(Selector selector) {
+		super(selector.getName(), copy(selector.getArgs()));
+		super.getData().putAll(selector.getData());
+	}
+	
+	private static List<SelectorArgument> copy(List<SelectorArgument> args) {
+		List<SelectorArgument> copy = new ArrayList<SelectorArgument>(args.size());
+		for (SelectorArgument arg : args) {
+			if (arg == null)
+				continue;
+			
+			String[] input = arg.getInput();
+			copy.add(new SelectorArgument(arg.getName(), input == null ? null : input.clone()));
+		}
+		return copy;
+	}
+	
+	@Override
+	public void add(SelectorArgument arg) {
+		throw new UnsupportedOperationException("ImmutableSelector cannot be modified");
+	}
+	
+	@Override
+	public SelectorArgument remove(String name) {
+		throw new UnsupportedOperationException("ImmutableSelector cannot be modified");
+	}
+	
+	@Override
+	public Object setData(String key, Object data) {
+		throw new UnsupportedOperationException("ImmutableSelector cannot be modified");
+	}
+	
+	@Override
+	public Map<String, Object> getData() {
+		return Collections.unmodifiableMap(super.getData());
+	}
+	
+	@Override
+	public Selector immutable() {
+		return this;
+	}
+	
+}
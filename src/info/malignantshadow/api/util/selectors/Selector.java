@@ -1,7 +1,16 @@
 package info.malignantshadow.api.util.selectors;
 
+import java.nio.ByteBuffer;
+import java.text.ParsePosition;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import info.malignantshadow.api.util.AttachableData;
 import info.malignantshadow.api.util.ListUtil;
@@ -29,17 +38,23 @@ public class Selector extends AttachableData {
 	public static final String CONTEXT_REGEX = NAME_REGEX + "(\\[[\\w=\\$\\^~!-|\\*><]*\\])?";
 	
 	private String _name;
-	private List<SelectorArgument> _args;
+	private Map<String, SelectorArgument> _args;
+	private volatile List<SelectorArgument> _argList;
 	
 	/**
-	 * Create a new Selector context with the given name and argument values.
+	 * Create a new Selector context with the given name and argument values. If more than one argument has the same name, the last one is
+	 * kept at the position of the first.
 	 * 
 	 * @param name
 	 * @param args
 	 */
 	public Selector(String name, List<SelectorArgument> args) {
 		_name = name;
-		_args = args;
+		_args = new LinkedHashMap<String, SelectorArgument>();
+		if (args != null)
+			for (SelectorArgument arg : args)
+				if (arg != null)
+					_args.put(arg.getName(), arg);
 	}
 	
 	/**
@@ -63,12 +78,17 @@ public class Selector extends AttachableData {
 	}
 	
 	/**
-	 * Get the arguments of this selector.
+	 * Get the arguments of this selector, in the order they were added. The returned list cannot be modified, use {@link #add(SelectorArgument)}
+	 * and {@link #remove(String)} instead.
 	 * 
 	 * @return The arguments.
 	 */
 	public List<SelectorArgument> getArgs() {
-		return _args;
+		List<SelectorArgument> list = _argList;
+		if (list == null)
+			_argList = list = Collections.unmodifiableList(new ArrayList<SelectorArgument>(_args.values()));
+		
+		return list;
 	}
 	
 	/**
@@ -90,8 +110,16 @@ public class Selector extends AttachableData {
 	 *            The argument
 	 */
 	public void add(SelectorArgument arg) {
-		if (arg != null && !ListUtil.replace(_args, arg, (a) -> a != null && a.getName().equals(arg.getName())))
-			_args.add(arg);
+		put(arg);
+	}
+	
+	// replacing an argument keeps its position, as LinkedHashMap keeps the original insertion order
+	private void put(SelectorArgument arg) {
+		if (arg == null)
+			return;
+		
+		_args.put(arg.getName(), arg);
+		_argList = null;
 	}
 	
 	/**
@@ -102,7 +130,11 @@ public class Selector extends AttachableData {
 	 * @return The argument that was removed.
 	 */
 	public SelectorArgument remove(String name) {
-		return ListUtil.remove(_args, (arg) -> arg != null && arg.getName().equals(name));
+		SelectorArgument arg = _args.remove(name);
+		if (arg != null)
+			_argList = null;
+		
+		return arg;
 	}
 	
 	/**
@@ -113,7 +145,7 @@ public class Selector extends AttachableData {
 	 * @return The argument.
 	 */
 	public SelectorArgument get(String name) {
-		return ListUtil.find(_args, (arg) -> arg != null && arg.getName().equals(name));
+		return _args.get(name);
 	}
 	
 	/**
@@ -182,16 +214,60 @@ public class Selector extends AttachableData {
 		if (arg == null || type == null)
 			return null;
 		
-		List<R> all = new ArrayList<R>();
-		if (arg.getInput() == null || arg.getInput().length == 0 || max == 0)
-			return all;
+		return arg.getValues(type, max);
+	}
+	
+	/**
+	 * Get an Iterator over the inputs for the argument with the given name, transformed into the given argument type. Unlike
+	 * {@link #getAll(String, Argument.Type)}, each input is only parsed when the Iterator reaches it.
+	 * 
+	 * @param name
+	 *            The name of the argument
+	 * @param type
+	 *            The type to transform the inputs into
+	 * @return The Iterator, which is empty if the argument wasn't found.
+	 */
+	public <R> Iterator<R> iterator(String name, Argument.Type<R> type) {
+		SelectorArgument arg = get(name);
+		if (arg == null)
+			return Collections.emptyIterator();
 		
-		int count = 0;
-		for (String s : arg.getInput())
-			if (max < 0 || count < max)
-				all.add(type.getValue(s));
-			
-		return all;
+		return arg.iterator(type);
+	}
+	
+	/**
+	 * Get a Stream of the inputs for the argument with the given name, transformed into the given argument type. Unlike
+	 * {@link #getAll(String, Argument.Type)}, each input is only parsed when the Stream reaches it.
+	 * 
+	 * @param name
+	 *            The name of the argument
+	 * @param type
+	 *            The type to transform the inputs into
+	 * @return The Stream, which is empty if the argument wasn't found.
+	 */
+	public <R> Stream<R> stream(String name, Argument.Type<R> type) {
+		SelectorArgument arg = get(name);
+		if (arg == null)
+			return Stream.empty();
+		
+		return arg.stream(type);
+	}
+	
+	/**
+	 * Does any input for the argument with the given name, transformed into the given argument type, match the given predicate? Inputs are
+	 * parsed one at a time, and the inputs after the first match are not parsed.
+	 * 
+	 * @param name
+	 *            The name of the argument
+	 * @param type
+	 *            The type to transform the inputs into
+	 * @param p
+	 *            The predicate
+	 * @return {@code true} if any parsed input matches, {@code false} if none match or the argument wasn't found.
+	 */
+	public <R> boolean anyMatch(String name, Argument.Type<R> type, Predicate<? super R> p) {
+		SelectorArgument arg = get(name);
+		return arg != null && arg.anyMatch(type, p);
 	}
 	
 	/**
@@ -215,11 +291,11 @@ public class Selector extends AttachableData {
 	 * @return The parsed input.
 	 */
 	public <R> R getOne(String name, Argument.Type<R> type) {
-		List<R> all = getAll(name, type, 1);
-		if (all == null || all.isEmpty())
+		SelectorArgument arg = get(name);
+		if (arg == null || type == null)
 			return null;
 		
-		return all.get(0);
+		return arg.getValue(0, type);
 	}
 	
 	/**
@@ -233,51 +309,241 @@ public class Selector extends AttachableData {
 		return get(name) != null;
 	}
 	
+	/**
+	 * Get an immutable copy of this selector. The returned selector can safely be shared, e.g. by a {@link SelectorCache}.
+	 * 
+	 * @return An immutable copy of this selector, or this selector if it is already immutable.
+	 */
+	public Selector immutable() {
+		return new ImmutableSelector(this);
+	}
+	
 	/**
 	 * Compile a selector
 	 * 
 	 * @param s
 	 *            The input string
-	 * @return The compiled selector.
+	 * @return The compiled selector, or {@code null} if the input is not a valid selector.
 	 */
 	public static final Selector compile(String s) {
-		if (!s.matches(CONTEXT_REGEX))
+		return compile(s, null);
+	}
+	
+	/**
+	 * Compile a selector. The input is validated and the selector is built in a single pass; the result is the same as if the input had been
+	 * tested against {@link #CONTEXT_REGEX}.
+	 * 
+	 * <p>
+	 * If the input is valid, the index of {@code pos} is set to the length of the input. Otherwise, the error index of {@code pos} is set to the
+	 * offset of the first character that could not be accepted (this is the length of the input if it ended too early) and {@code null} is
+	 * returned.
+	 * </p>
+	 * 
+	 * @param s
+	 *            The input string
+	 * @param pos
+	 *            The position to report the result to, may be {@code null}
+	 * @return The compiled selector, or {@code null} if the input is not a valid selector.
+	 */
+	public static final Selector compile(String s, ParsePosition pos) {
+		if (s == null)
+			return null;
+		
+		return scan(s, 0, s.length(), pos);
+	}
+	
+	/**
+	 * Compile the selector between {@code start} (inclusive) and {@code end} (exclusive) of the given character sequence, e.g. a selector
+	 * within a chat line.
+	 * 
+	 * <p>
+	 * The inputs of the arguments are not copied out of the sequence until they are requested as Strings (see
+	 * {@link SelectorArgument#getInput()}), so the sequence must not be modified until then. {@link #immutable()} copies every input.
+	 * </p>
+	 * 
+	 * @param s
+	 *            The character sequence
+	 * @param start
+	 *            The index the selector starts at
+	 * @param end
+	 *            The index the selector ends at
+	 * @return The compiled selector, or {@code null} if the input is not a valid selector.
+	 */
+	public static final Selector compile(CharSequence s, int start, int end) {
+		return compile(s, start, end, null);
+	}
+	
+	/**
+	 * Compile the selector between {@code start} (inclusive) and {@code end} (exclusive) of the given character sequence. See
+	 * {@link #compile(CharSequence, int, int)} and {@link #compile(String, ParsePosition)}. The indices reported to {@code pos} are indices of
+	 * the character sequence.
+	 * 
+	 * @param s
+	 *            The character sequence
+	 * @param start
+	 *            The index the selector starts at
+	 * @param end
+	 *            The index the selector ends at
+	 * @param pos
+	 *            The position to report the result to, may be {@code null}
+	 * @return The compiled selector, or {@code null} if the input is not a valid selector.
+	 */
+	public static final Selector compile(CharSequence s, int start, int end, ParsePosition pos) {
+		if (s == null)
 			return null;
+		if (start < 0 || end > s.length() || start > end)
+			throw new IndexOutOfBoundsException(String.format("start %d, end %d, length %d", start, end, s.length()));
 		
-		String name = s.substring(0, s.contains("[") ? s.indexOf('[') : s.length());
-		if (!name.matches(NAME_REGEX))
+		return scan(s, start, end, pos);
+	}
+	
+	/**
+	 * Compile the UTF-8 encoded selector between the position and limit of the given buffer. The position of the buffer is not changed.
+	 * 
+	 * <p>
+	 * A valid selector only contains ASCII characters, so the bytes are read as characters directly; any byte that is part of a multi-byte
+	 * sequence makes the selector invalid. As with {@link #compile(CharSequence, int, int)}, inputs are only copied out of the buffer when they
+	 * are requested as Strings, so the buffer's content must not be modified until then.
+	 * </p>
+	 * 
+	 * @param buffer
+	 *            The buffer
+	 * @return The compiled selector, or {@code null} if the input is not a valid selector.
+	 */
+	public static final Selector compile(ByteBuffer buffer) {
+		return compile(buffer, null);
+	}
+	
+	/**
+	 * Compile the UTF-8 encoded selector between the position and limit of the given buffer. See {@link #compile(ByteBuffer)} and
+	 * {@link #compile(String, ParsePosition)}. The indices reported to {@code pos} are relative to the position of the buffer.
+	 * 
+	 * @param buffer
+	 *            The buffer
+	 * @param pos
+	 *            The position to report the result to, may be {@code null}
+	 * @return The compiled selector, or {@code null} if the input is not a valid selector.
+	 */
+	public static final Selector compile(ByteBuffer buffer, ParsePosition pos) {
+		if (buffer == null)
 			return null;
 		
-		Selector selector = new Selector(name, new ArrayList<SelectorArgument>());
-		if (name.length() == s.length() || s.length() == name.length() + 2) //no arguments given
+		AsciiSequence s = new AsciiSequence(buffer);
+		return scan(s, 0, s.length(), pos);
+	}
+	
+	private static boolean isWordChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+	}
+	
+	private static boolean isNamePrefix(char c) {
+		return c == '~' || c == '!' || c == '@' || c == '#' || c == '$' || c == '%' || c == '.' || c == '*' || c == '?';
+	}
+	
+	// the argument character class of CONTEXT_REGEX contains the range '!-|', so everything from 0x21 to 0x7C is allowed (plus '~')
+	private static boolean isArgumentChar(char c) {
+		return (c >= '!' && c <= '|') || c == '~';
+	}
+	
+	private static Selector fail(ParsePosition pos, int offset) {
+		if (pos != null)
+			pos.setErrorIndex(offset);
+		return null;
+	}
+	
+	private static Selector scan(CharSequence s, int start, int end, ParsePosition pos) {
+		int i = start;
+		if (i < end && isNamePrefix(s.charAt(i)))
+			i++;
+		
+		int nameStart = i;
+		while (i < end && isWordChar(s.charAt(i)))
+			i++;
+		if (i == nameStart)
+			return fail(pos, i);
+		
+		Selector selector = new Selector(s.subSequence(start, i).toString(), new ArrayList<SelectorArgument>());
+		if (i == end) {
+			if (pos != null)
+				pos.setIndex(end);
 			return selector;
+		}
+		
+		if (s.charAt(i) != '[')
+			return fail(pos, i);
 		
-		String arguments = s.substring(s.indexOf('[') + 1, s.indexOf(']'));
-		String[] pairs = arguments.split(",");
-		for (String p : pairs) {
-			if (p.isEmpty())
+		// Everything between '[' and the final ']' is validated, but only the text up to the first ']' holds arguments.
+		boolean closed = false;
+		int bracket = i;
+		int pairStart = ++i, eq = -1, inputStart = -1;
+		Bounds input = new Bounds();
+		for (; i < end; i++) {
+			char c = s.charAt(i);
+			if (!isArgumentChar(c))
+				return fail(pos, i);
+			if (closed)
 				continue;
 			
-			int index = p.indexOf('=');
-			if (index == -1 || index == p.length() - 1) { //no '=' or ends with it
-				selector.add(new SelectorArgument(p, new String[0]));
-				continue;
+			if (c == ',' || c == ']') {
+				addArgument(selector, s, pairStart, i, eq, inputStart, input);
+				pairStart = i + 1;
+				eq = -1;
+				closed = c == ']';
+			} else if (c == '=' && eq == -1) {
+				eq = i;
+				inputStart = i + 1;
+			} else if (c == '|' && eq != -1) {
+				input.add(inputStart, i);
+				inputStart = i + 1;
 			}
-			
-			String argName = p.substring(0, index);
-			String[] input = p.substring(index + 1, p.length()).split("\\|");
-			selector.add(new SelectorArgument(argName, input));
 		}
+		
+		if (end - 1 == bracket || s.charAt(end - 1) != ']')
+			return fail(pos, end);
+		
+		if (pos != null)
+			pos.setIndex(end);
 		return selector;
 	}
 	
+	private static void addArgument(Selector selector, CharSequence s, int start, int end, int eq, int inputStart, Bounds input) {
+		if (start == end)
+			return;
+		
+		if (eq == -1 || eq == end - 1) { //no '=' or ends with it
+			input.size = 0;
+			selector.add(new SelectorArgument(s.subSequence(start, end).toString(), new String[0]));
+			return;
+		}
+		
+		//trailing empty inputs are dropped, as String.split() would do
+		input.add(inputStart, end);
+		while (input.size > 0 && input.bounds[input.size * 2 - 2] == input.bounds[input.size * 2 - 1])
+			input.size--;
+		
+		selector.add(new SelectorArgument(s.subSequence(start, eq).toString(), s, Arrays.copyOf(input.bounds, input.size * 2)));
+		input.size = 0;
+	}
+	
+	// the start and end indices of the inputs of the argument being scanned
+	private static class Bounds {
+		
+		private int[] bounds = new int[8];
+		private int size;
+		
+		void add(int start, int end) {
+			if (size * 2 == bounds.length)
+				bounds = Arrays.copyOf(bounds, bounds.length * 2);
+			bounds[size * 2] = start;
+			bounds[size * 2 + 1] = end;
+			size++;
+		}
+		
+	}
+	
 	@Override
 	public String toString() {
-		String s = _name;
-		if (_args.isEmpty())
-			return s + "[]";
-		
-		return s + "[" + ListUtil.join(_args, ",") + "]";
+		return ListUtil.joinTo(new StringBuilder(_name).append('['), getArgs(), ",").append(']').toString();
 	}
 	
 }
@@ -1,19 +1,48 @@
 package info.malignantshadow.api.util.selectors;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import info.malignantshadow.api.util.ListUtil;
+import info.malignantshadow.api.util.arguments.Argument;
 
 /**
  * Represents an argument to a selector.
  * 
+ * <p>
+ * Values of {@link Argument.Type#isImmutable() immutable} types parsed with {@link #getValue(int, Argument.Type)} and
+ * {@link #getValues(Argument.Type, int)} are remembered per argument type (by identity), so each input is only parsed once per type. Values
+ * of other types are parsed every time they are requested, so every caller gets its own. For this reason, the array returned by
+ * {@link #getInput()} must not be modified.
+ * </p>
+ * 
  * @author MalignantShadow (Caleb Downs)
  *
  */
 public class SelectorArgument {
 	
+	/**
+	 * The maximum amount of argument types whose values are remembered by a single argument. Once it is reached, the values of the type
+	 * that was cached first are forgotten to make room for a new one.
+	 */
+	public static final int MAX_CACHED_TYPES = 8;
+	
+	private static final Object UNPARSED = new Object();
+	private static final Object NULL = new Object();
+	private static final Parsed[] NONE = new Parsed[0];
+	
 	private String _name;
-	private String[] _input;
+	private volatile String[] _input;
+	private CharSequence _source;
+	private int[] _bounds;
+	private volatile Parsed[] _parsed; // null until a value is parsed, so creating an argument needs no volatile write
 	
 	/**
 	 * Create a new selector argument
@@ -28,6 +57,22 @@ public class SelectorArgument {
 		_input = input;
 	}
 	
+	/**
+	 * Create a new selector argument whose inputs are ranges of the given sequence, which are only copied when they are requested as Strings.
+	 * 
+	 * @param name
+	 *            The name of the argument
+	 * @param source
+	 *            The sequence
+	 * @param bounds
+	 *            The start (inclusive) and end (exclusive) index of each input, one after the other
+	 */
+	SelectorArgument(String name, CharSequence source, int[] bounds) {
+		_name = name;
+		_source = source;
+		_bounds = bounds;
+	}
+	
 	/**
 	 * Get the name of this argument
 	 * 
@@ -43,12 +88,209 @@ public class SelectorArgument {
 	 * @return The inputs.
 	 */
 	public String[] getInput() {
-		return _input;
+		String[] input = _input;
+		if (input == null && _source != null) {
+			input = new String[_bounds.length / 2];
+			for (int i = 0; i < input.length; i++)
+				input[i] = _source.subSequence(_bounds[i * 2], _bounds[i * 2 + 1]).toString();
+			_input = input;
+		}
+		
+		return input;
+	}
+	
+	/**
+	 * Get the amount of inputs of this argument.
+	 * 
+	 * @return The amount of inputs, or {@code -1} if the inputs are {@code null}.
+	 */
+	public int getInputCount() {
+		String[] input = _input;
+		if (input != null)
+			return input.length;
+		
+		return _source == null ? -1 : _bounds.length / 2;
+	}
+	
+	/**
+	 * Get the input at the given index as a {@link CharSequence}. If this argument was compiled from a sequence, the returned sequence is a
+	 * view of it and no String is created.
+	 * 
+	 * @param index
+	 *            The index of the input
+	 * @return The input.
+	 * @throws IndexOutOfBoundsException
+	 *             If the index is out of bounds.
+	 */
+	public CharSequence getInputSequence(int index) {
+		String[] input = _input;
+		if (input != null || _source == null)
+			return input[index];
+		
+		if (index < 0 || index >= _bounds.length / 2)
+			throw new IndexOutOfBoundsException("index " + index + ", count " + _bounds.length / 2);
+		
+		return new CharSlice(_source, _bounds[index * 2], _bounds[index * 2 + 1]);
+	}
+	
+	private String input(int index) {
+		String[] input = _input;
+		if (input != null)
+			return input[index];
+		
+		return _source.subSequence(_bounds[index * 2], _bounds[index * 2 + 1]).toString();
+	}
+	
+	private Parsed parsed(Argument.Type<?> type) {
+		if (!type.isImmutable())
+			return null;
+		
+		Parsed[] parsed = _parsed;
+		if (parsed != null)
+			for (Parsed p : parsed)
+				if (p._type == type)
+					return p;
+		
+		synchronized (this) {
+			parsed = _parsed == null ? NONE : _parsed;
+			for (Parsed p : parsed)
+				if (p._type == type)
+					return p;
+			
+			Parsed p = new Parsed(type, getInputCount());
+			int from = parsed.length == MAX_CACHED_TYPES ? 1 : 0; // types that are only used once don't keep their slot for good
+			parsed = Arrays.copyOfRange(parsed, from, parsed.length + 1);
+			parsed[parsed.length - 1] = p;
+			_parsed = parsed;
+			return p;
+		}
+	}
+	
+	/**
+	 * Get the input at the given index, transformed into the given argument type. If the type is
+	 * {@link Argument.Type#isImmutable() immutable}, the value is only parsed the first time it is requested for the type.
+	 * 
+	 * @param index
+	 *            The index of the input
+	 * @param type
+	 *            The type to transform the input into
+	 * @return The parsed input, or {@code null} if the index is out of bounds.
+	 */
+	@SuppressWarnings("unchecked")
+	public <R> R getValue(int index, Argument.Type<R> type) {
+		if (index < 0 || index >= getInputCount())
+			return null;
+		
+		Parsed parsed = parsed(type);
+		if (parsed == null)
+			return type.getValue(input(index));
+		
+		Object value = parsed._values.get(index);
+		if (value == UNPARSED) {
+			R r = type.getValue(input(index));
+			parsed._values.set(index, r == null ? NULL : r);
+			return r;
+		}
+		
+		return value == NULL ? null : (R) value;
+	}
+	
+	/**
+	 * Get a maximum of {@code max} inputs of this argument, transformed into the given argument type. Inputs after the first {@code max} are
+	 * not parsed.
+	 * 
+	 * @param type
+	 *            The type to transform the inputs into
+	 * @param max
+	 *            The maximum amount of inputs to return, or a negative number for all of them
+	 * @return The parsed inputs.
+	 */
+	public <R> List<R> getValues(Argument.Type<R> type, int max) {
+		int count = Math.max(0, getInputCount());
+		int size = max < 0 ? count : Math.min(max, count);
+		List<R> values = new ArrayList<R>(size);
+		for (int i = 0; i < size; i++)
+			values.add(getValue(i, type));
+		return values;
+	}
+	
+	/**
+	 * Get an Iterator over the inputs of this argument, transformed into the given argument type. Each input is parsed when the Iterator
+	 * reaches it.
+	 * 
+	 * @param type
+	 *            The type to transform the inputs into
+	 * @return The Iterator.
+	 */
+	public <R> Iterator<R> iterator(Argument.Type<R> type) {
+		return new Iterator<R>() {
+			
+			private int _index;
+			
+			@Override
+			public boolean hasNext() {
+				return _index < getInputCount();
+			}
+			
+			@Override
+			public R next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				
+				return getValue(_index++, type);
+			}
+			
+		};
+	}
+	
+	/**
+	 * Get a Stream of the inputs of this argument, transformed into the given argument type. Each input is parsed when the Stream reaches
+	 * it, so short-circuiting operations such as {@link Stream#findFirst()} do not parse the remaining inputs.
+	 * 
+	 * @param type
+	 *            The type to transform the inputs into
+	 * @return The Stream.
+	 */
+	public <R> Stream<R> stream(Argument.Type<R> type) {
+		return IntStream.range(0, Math.max(0, getInputCount())).mapToObj((i) -> getValue(i, type));
+	}
+	
+	/**
+	 * Does any input of this argument, transformed into the given argument type, match the given predicate? Inputs are parsed one at a time,
+	 * and the inputs after the first match are not parsed.
+	 * 
+	 * @param type
+	 *            The type to transform the inputs into
+	 * @param p
+	 *            The predicate
+	 * @return {@code true} if any parsed input matches.
+	 */
+	public <R> boolean anyMatch(Argument.Type<R> type, Predicate<? super R> p) {
+		int count = getInputCount();
+		for (int i = 0; i < count; i++)
+			if (p.test(getValue(i, type)))
+				return true;
+		
+		return false;
 	}
 	
 	@Override
 	public String toString() {
-		return _name + "=" + ListUtil.join(Arrays.asList(_input), "|");
+		return _name + "=" + ListUtil.join(Arrays.asList(getInput()), "|");
+	}
+	
+	private static class Parsed {
+		
+		private Argument.Type<?> _type;
+		private AtomicReferenceArray<Object> _values;
+		
+		Parsed(Argument.Type<?> type, int size) {
+			_type = type;
+			_values = new AtomicReferenceArray<Object>(size);
+			for (int i = 0; i < size; i++)
+				_values.set(i, UNPARSED);
+		}
+		
 	}
 	
 }
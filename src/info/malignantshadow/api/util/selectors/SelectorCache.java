@@ -0,0 +1,238 @@
+package info.malignantshadow.api.util.selectors;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A size-bounded cache of compiled selectors, keyed by their input string. Selectors held by the cache are {@link ImmutableSelector immutable}
+ * and may be shared freely.
+ * 
+ * <p>
+ * The cache is split into segments that each hold a least-recently-used map and are locked independently, so threads looking up different
+ * selectors rarely wait on each other. Input that does not compile is not cached.
+ * </p>
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ */
+public class SelectorCache {
+	
+	/**
+	 * The maximum size of the shared cache returned by {@link #getShared()}
+	 */
+	public static final int SHARED_SIZE = 1024;
+	
+	private static final SelectorCache SHARED = new SelectorCache(SHARED_SIZE);
+	
+	private Segment[] _segments;
+	private int _maxSize;
+	private LongAdder _hits, _misses, _evictions;
+	
+	/**
+	 * Create a new cache that holds a maximum of {@code maxSize} selectors.
+	 * 
+	 * @param maxSize
+	 *            The maximum size of the cache
+	 */
+	public SelectorCache(int maxSize) {
+		if (maxSize <= 0)
+			throw new IllegalArgumentException("maxSize must be positive");
+		
+		int count = 1;
+		while (count < 16 && count * 2 * 16 <= maxSize)
+			count *= 2;
+		
+		_maxSize = maxSize;
+		_segments = new Segment[count];
+		for (int i = 0; i < count; i++)
+			_segments[i] = new Segment(maxSize / count + (i < maxSize % count ? 1 : 0));
+		_hits = new LongAdder();
+		_misses = new LongAdder();
+		_evictions = new LongAdder();
+	}
+	
+	/**
+	 * Get the cache shared by the whole application, which holds a maximum of {@link #SHARED_SIZE} selectors.
+	 * 
+	 * @return The shared cache.
+	 */
+	public static SelectorCache getShared() {
+		return SHARED;
+	}
+	
+	private Segment segmentFor(String input) {
+		int h = input.hashCode();
+		h ^= h >>> 16;
+		return _segments[h & (_segments.length - 1)];
+	}
+	
+	/**
+	 * Get the compiled selector for the given input, compiling it with {@link Selector#compile(String)} if it isn't cached yet.
+	 * 
+	 * @param input
+	 *            The input string
+	 * @return The (immutable) compiled selector, or {@code null} if the input is not a valid selector.
+	 */
+	public Selector get(String input) {
+		if (input == null)
+			return null;
+		
+		Segment segment = segmentFor(input);
+		Selector selector;
+		synchronized (segment) {
+			selector = segment.get(input);
+		}
+		if (selector != null) {
+			_hits.increment();
+			return selector;
+		}
+		
+		_misses.increment();
+		Selector compiled = Selector.compile(input);
+		if (compiled == null)
+			return null;
+		
+		selector = compiled.immutable();
+		synchronized (segment) {
+			Selector existing = segment.putIfAbsent(input, selector);
+			return existing == null ? selector : existing;
+		}
+	}
+	
+	/**
+	 * Get the compiled selector for the given input if it is cached. This does not count as a hit or miss.
+	 * 
+	 * @param input
+	 *            The input string
+	 * @return The cached selector, or {@code null} if it isn't cached.
+	 */
+	public Selector getIfPresent(String input) {
+		if (input == null)
+			return null;
+		
+		Segment segment = segmentFor(input);
+		synchronized (segment) {
+			return segment.get(input);
+		}
+	}
+	
+	/**
+	 * Remove the selector for the given input from this cache.
+	 * 
+	 * @param input
+	 *            The input string
+	 * @return The selector that was removed, if any.
+	 */
+	public Selector invalidate(String input) {
+		if (input == null)
+			return null;
+		
+		Segment segment = segmentFor(input);
+		synchronized (segment) {
+			return segment.remove(input);
+		}
+	}
+	
+	/**
+	 * Remove all selectors from this cache. The hit, miss and eviction counts are not reset.
+	 */
+	public void clear() {
+		for (Segment segment : _segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+	
+	/**
+	 * Get the amount of selectors currently held in this cache.
+	 * 
+	 * @return The size.
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : _segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * Get the maximum amount of selectors this cache will hold.
+	 * 
+	 * @return The maximum size.
+	 */
+	public int getMaxSize() {
+		return _maxSize;
+	}
+	
+	/**
+	 * Get the amount of lookups that were answered from this cache.
+	 * 
+	 * @return The hit count.
+	 */
+	public long getHits() {
+		return _hits.sum();
+	}
+	
+	/**
+	 * Get the amount of lookups that had to compile their input.
+	 * 
+	 * @return The miss count.
+	 */
+	public long getMisses() {
+		return _misses.sum();
+	}
+	
+	/**
+	 * Get the amount of selectors that were removed from this cache to make room for others.
+	 * 
+	 * @return The eviction count.
+	 */
+	public long getEvictions() {
+		return _evictions.sum();
+	}
+	
+	/**
+	 * Get the ratio of hits to total lookups.
+	 * 
+	 * @return The hit rate, between {@code 0} and {@code 1}.
+	 */
+	public double getHitRate() {
+		long hits = getHits();
+		long total = hits + getMisses();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+	
+	@Override
+	public String toString() {
+		return String.format("SelectorCache{size=%d, maxSize=%d, hits=%d, misses=%d, evictions=%d}", size(), _maxSize, getHits(), getMisses(),
+			getEvictions());
+	}
+	
+	private class Segment extends LinkedHashMap<String, Selector> {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private int _capacity;
+		
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			_capacity = capacity;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Selector> eldest) {
+			if (size() <= _capacity)
+				return false;
+			
+			_evictions.increment();
+			return true;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,315 @@
+package info.malignantshadow.api.util.selectors;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes selectors in a compact binary form, so compiled selectors can be sent between servers without being turned back into a
+ * String and compiled again.
+ * 
+ * <p>
+ * The format (version {@value #VERSION}) is:
+ * </p>
+ * <ul>
+ * <li>The version, as a single byte</li>
+ * <li>The amount of bytes that follow, as a varint</li>
+ * <li>The name of the selector</li>
+ * <li>The amount of arguments, as a varint</li>
+ * <li>For each argument: its name, the amount of inputs plus one (as a varint, {@code 0} if the inputs are {@code null}) and each
+ * input</li>
+ * </ul>
+ * <p>
+ * Strings are written as their length in bytes (as a varint) followed by their UTF-8 encoding. Varints use 7 bits per byte, least significant
+ * group first, with the high bit set on every byte but the last. Attached data ({@link Selector#getData()}) is not written.
+ * </p>
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ */
+public final class SelectorCodec {
+	
+	/**
+	 * The current version of the format.
+	 */
+	public static final int VERSION = 1;
+	
+	private SelectorCodec() {
+	}
+	
+	/**
+	 * Get the amount of bytes the given selector will take up when written.
+	 * 
+	 * @param selector
+	 *            The selector
+	 * @return The amount of bytes
+	 */
+	public static int getEncodedLength(Selector selector) {
+		int length = getBodyLength(selector);
+		return 1 + varintLength(length) + length;
+	}
+	
+	private static int getBodyLength(Selector selector) {
+		List<SelectorArgument> args = selector.getArgs();
+		int length = getEncodedLength(selector.getName()) + varintLength(args.size());
+		for (SelectorArgument arg : args) {
+			int inputs = arg.getInputCount();
+			length += getEncodedLength(arg.getName()) + varintLength(inputs + 1);
+			for (int i = 0; i < inputs; i++)
+				length += getEncodedLength(arg.getInputSequence(i));
+		}
+		return length;
+	}
+	
+	/**
+	 * Write the given selector to a new array.
+	 * 
+	 * @param selector
+	 *            The selector
+	 * @return The bytes.
+	 */
+	public static byte[] toBytes(Selector selector) {
+		ByteBuffer buffer = ByteBuffer.allocate(getEncodedLength(selector));
+		write(selector, buffer);
+		return buffer.array();
+	}
+	
+	/**
+	 * Write the given selector to the given buffer, starting at its position. The position is moved past the written bytes.
+	 * 
+	 * @param selector
+	 *            The selector
+	 * @param buffer
+	 *            The buffer
+	 * @throws java.nio.BufferOverflowException
+	 *             If the buffer does not have {@link #getEncodedLength(Selector)} bytes remaining.
+	 */
+	public static void write(Selector selector, ByteBuffer buffer) {
+		int length = getBodyLength(selector);
+		if (buffer.remaining() < 1 + varintLength(length) + length)
+			throw new BufferOverflowException();
+		
+		List<SelectorArgument> args = selector.getArgs();
+		buffer.put((byte) VERSION);
+		writeVarint(length, buffer);
+		writeString(selector.getName(), buffer);
+		writeVarint(args.size(), buffer);
+		for (SelectorArgument arg : args) {
+			int inputs = arg.getInputCount();
+			writeString(arg.getName(), buffer);
+			writeVarint(inputs + 1, buffer);
+			for (int i = 0; i < inputs; i++)
+				writeString(arg.getInputSequence(i), buffer);
+		}
+	}
+	
+	/**
+	 * Read a selector from the given buffer, starting at its position. The position is moved past the read bytes.
+	 * 
+	 * <p>
+	 * The selector is copied out of the buffer, so the buffer may be reused afterwards. Like {@link Selector#compile(ByteBuffer)}, ASCII
+	 * inputs only become Strings when they are requested.
+	 * </p>
+	 * 
+	 * @param buffer
+	 *            The buffer
+	 * @return The selector.
+	 * @throws IllegalArgumentException
+	 *             If the data was written with an unknown version or is malformed.
+	 * @throws java.nio.BufferUnderflowException
+	 *             If the buffer ends before the selector does.
+	 */
+	public static Selector read(ByteBuffer buffer) {
+		int version = buffer.get() & 0xFF;
+		if (version != VERSION)
+			throw new IllegalArgumentException("Unknown selector format version " + version);
+		
+		int length = 0;
+		for (int shift = 0;; shift += 7) {
+			if (shift >= 32)
+				throw new IllegalArgumentException("Malformed varint");
+			
+			byte b = buffer.get();
+			length |= (b & 0x7F) << shift;
+			if (b >= 0)
+				break;
+		}
+		if (length < 0)
+			throw new IllegalArgumentException("Negative length " + length);
+		if (length > buffer.remaining())
+			throw new BufferUnderflowException();
+		
+		byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new Reader(bytes).read();
+	}
+	
+	/**
+	 * Read a selector from the given array.
+	 * 
+	 * @param bytes
+	 *            The bytes
+	 * @return The selector.
+	 * @see #read(ByteBuffer)
+	 */
+	public static Selector fromBytes(byte[] bytes) {
+		return read(ByteBuffer.wrap(bytes));
+	}
+	
+	private static int varintLength(int value) {
+		int length = 1;
+		while ((value >>>= 7) != 0)
+			length++;
+		return length;
+	}
+	
+	private static void writeVarint(int value, ByteBuffer buffer) {
+		while ((value & ~0x7F) != 0) {
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+	
+	private static int utf8Length(CharSequence s) {
+		int bytes = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < 0x80)
+				bytes++;
+			else if (c < 0x800)
+				bytes += 2;
+			else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				bytes += 4;
+				i++;
+			} else if (Character.isSurrogate(c))
+				bytes++; // written as '?', like String.getBytes does
+			else
+				bytes += 3;
+		}
+		return bytes;
+	}
+	
+	private static int getEncodedLength(CharSequence s) {
+		int bytes = utf8Length(s);
+		return varintLength(bytes) + bytes;
+	}
+	
+	private static void writeString(CharSequence s, ByteBuffer buffer) {
+		int length = s.length();
+		writeVarint(utf8Length(s), buffer);
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80)
+				buffer.put((byte) c);
+			else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | c >> 6));
+				buffer.put((byte) (0x80 | c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				buffer.put((byte) (0xF0 | cp >> 18));
+				buffer.put((byte) (0x80 | cp >> 12 & 0x3F));
+				buffer.put((byte) (0x80 | cp >> 6 & 0x3F));
+				buffer.put((byte) (0x80 | cp & 0x3F));
+			} else if (Character.isSurrogate(c))
+				buffer.put((byte) '?');
+			else {
+				buffer.put((byte) (0xE0 | c >> 12));
+				buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+				buffer.put((byte) (0x80 | c & 0x3F));
+			}
+		}
+	}
+	
+	private static class Reader {
+		
+		private byte[] _bytes;
+		private int _pos;
+		private AsciiSequence _source;
+		
+		Reader(byte[] bytes) {
+			_bytes = bytes;
+		}
+		
+		Selector read() {
+			String name = readName();
+			int count = readLength();
+			List<SelectorArgument> args = new ArrayList<SelectorArgument>(Math.min(count, _bytes.length));
+			for (int i = 0; i < count; i++) {
+				String argName = readName();
+				int inputs = readLength() - 1;
+				if (inputs < 0) {
+					args.add(new SelectorArgument(argName, null));
+					continue;
+				}
+				
+				int[] bounds = new int[Math.min(inputs, _bytes.length - _pos) * 2];
+				if (inputs * 2 != bounds.length)
+					throw new IllegalArgumentException(inputs + " inputs exceed the remaining " + (_bytes.length - _pos) + " bytes");
+				
+				boolean ascii = true;
+				for (int j = 0; j < inputs; j++) {
+					int length = readStringLength();
+					for (int k = _pos; k < _pos + length && ascii; k++)
+						ascii = _bytes[k] >= 0;
+					bounds[j * 2] = _pos;
+					bounds[j * 2 + 1] = _pos += length;
+				}
+				
+				if (ascii) {
+					if (_source == null)
+						_source = new AsciiSequence(ByteBuffer.wrap(_bytes));
+					args.add(new SelectorArgument(argName, _source, bounds));
+					continue;
+				}
+				
+				String[] input = new String[inputs];
+				for (int j = 0; j < inputs; j++)
+					input[j] = new String(_bytes, bounds[j * 2], bounds[j * 2 + 1] - bounds[j * 2], StandardCharsets.UTF_8);
+				args.add(new SelectorArgument(argName, input));
+			}
+			
+			if (_pos != _bytes.length)
+				throw new IllegalArgumentException((_bytes.length - _pos) + " bytes left after the selector");
+			
+			return new Selector(name, args);
+		}
+		
+		private int readLength() {
+			int value = 0;
+			for (int shift = 0; shift < 32; shift += 7) {
+				if (_pos >= _bytes.length)
+					throw new IllegalArgumentException("Selector ends in the middle of a varint");
+				
+				byte b = _bytes[_pos++];
+				value |= (b & 0x7F) << shift;
+				if (b >= 0) {
+					if (value < 0)
+						throw new IllegalArgumentException("Negative length " + value);
+					return value;
+				}
+			}
+			throw new IllegalArgumentException("Malformed varint");
+		}
+		
+		private int readStringLength() {
+			int length = readLength();
+			if (length > _bytes.length - _pos)
+				throw new IllegalArgumentException("String length " + length + " exceeds the remaining " + (_bytes.length - _pos) + " bytes");
+			
+			return length;
+		}
+		
+		private String readName() {
+			int length = readStringLength();
+			String name = new String(_bytes, _pos, length, StandardCharsets.UTF_8);
+			_pos += length;
+			return name;
+		}
+		
+	}
+	
+}
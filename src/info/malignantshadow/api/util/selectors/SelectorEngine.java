@@ -0,0 +1,343 @@
+package info.malignantshadow.api.util.selectors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import info.malignantshadow.api.util.LenientMatcher;
+import info.malignantshadow.api.util.LenientPatternSet;
+import info.malignantshadow.api.util.arguments.Argument;
+
+/**
+ * Compiles {@link Selector Selectors} into reusable {@link Predicate Predicates}. The way each selector argument is tested is registered
+ * once per argument name, and every argument input is parsed when the selector is compiled, so testing a candidate does not parse anything.
+ * 
+ * <p>
+ * Arguments that have no input, or whose name was not registered, do not restrict the candidates. If an argument has more than one input
+ * (e.g. {@code name=Bob|Alice}), a candidate has to match at least one of them.
+ * </p>
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ * @param <T>
+ *            The type of candidate
+ */
+public class SelectorEngine<T> {
+	
+	/**
+	 * Compiles the input of a single selector argument into a test for candidates.
+	 * 
+	 * @author MalignantShadow (Caleb Downs)
+	 *
+	 * @param <T>
+	 *            The type of candidate
+	 */
+	@FunctionalInterface
+	public static interface ArgumentCompiler<T> {
+		
+		/**
+		 * Compile the given argument.
+		 * 
+		 * @param arg
+		 *            The argument
+		 * @return The test for the argument, or {@code null} if the argument does not restrict the candidates.
+		 */
+		public Predicate<T> compile(SelectorArgument arg);
+		
+		/**
+		 * Estimate the cost of testing a candidate against the given argument, relative to other arguments. This is used by
+		 * {@link SelectorEngine#plan(Selector)} to decide which arguments to test first.
+		 * 
+		 * @param arg
+		 *            The argument
+		 * @return The estimated cost. By default, this is {@code 1}.
+		 */
+		public default double getCost(SelectorArgument arg) {
+			return 1;
+		}
+		
+	}
+	
+	private Map<String, ArgumentCompiler<T>> _compilers;
+	private Map<String, Double> _costs;
+	
+	/**
+	 * Create a new engine with no registered arguments.
+	 */
+	public SelectorEngine() {
+		_compilers = new HashMap<String, ArgumentCompiler<T>>();
+		_costs = new HashMap<String, Double>();
+	}
+	
+	/**
+	 * Register an argument that is compiled by the given compiler.
+	 * 
+	 * @param name
+	 *            The name of the argument
+	 * @param compiler
+	 *            The compiler
+	 * @return this
+	 */
+	public SelectorEngine<T> withArgument(String name, ArgumentCompiler<T> compiler) {
+		_compilers.put(name, compiler);
+		return this;
+	}
+	
+	/**
+	 * Register an argument that {@link info.malignantshadow.api.util.StringUtil#lenientMatch(String, String) leniently matches} its input
+	 * against an attribute of the candidate. Each input is compiled into a {@link LenientMatcher}.
+	 * 
+	 * @param name
+	 *            The name of the argument
+	 * @param extractor
+	 *            A Function that takes in a candidate and returns the attribute to test.
+	 * @return this
+	 */
+	public SelectorEngine<T> withAttribute(String name, Function<? super T, String> extractor) {
+		return withAttribute(name, extractor, false);
+	}
+	
+	/**
+	 * Register an argument that {@link info.malignantshadow.api.util.StringUtil#lenientMatch(String, String) leniently matches} its input
+	 * against an attribute of the candidate, optionally recognizing {@link LenientMatcher.Operator#GLOB glob} inputs such as
+	 * {@code name=#guard*}. Each input is compiled into a {@link LenientMatcher}.
+	 * 
+	 * @param name
+	 *            The name of the argument
+	 * @param extractor
+	 *            A Function that takes in a candidate and returns the attribute to test.
+	 * @param globs
+	 *            {@code true} if a leading {@code #} makes an input a glob
+	 * @return this
+	 */
+	public SelectorEngine<T> withAttribute(String name, Function<? super T, String> extractor, boolean globs) {
+		return withArgument(name, new AttributeCompiler<T>(extractor, globs));
+	}
+	
+	/**
+	 * Set the estimated cost of testing the argument with the given name, overriding the estimate of its {@link ArgumentCompiler}.
+	 * 
+	 * @param name
+	 *            The name of the argument
+	 * @param cost
+	 *            The cost, relative to other arguments
+	 * @return this
+	 */
+	public SelectorEngine<T> withCost(String name, double cost) {
+		_costs.put(name, cost);
+		return this;
+	}
+	
+	/**
+	 * Register an argument whose input is parsed with the given argument type. Inputs that cannot be parsed (the type returns {@code null})
+	 * are ignored; if no input can be parsed, the argument will not match any candidate.
+	 * 
+	 * @param name
+	 *            The name of the argument
+	 * @param type
+	 *            The type to parse the inputs with
+	 * @param test
+	 *            A BiPredicate that takes in a candidate and a parsed input and tests if the candidate matches
+	 * @return this
+	 */
+	public <R> SelectorEngine<T> withArgument(String name, Argument.Type<R> type, BiPredicate<? super T, ? super R> test) {
+		return withArgument(name, (arg) -> {
+			String[] input = arg.getInput();
+			if (input == null || input.length == 0)
+				return null;
+			
+			List<R> values = new ArrayList<R>(input.length);
+			for (String s : input) {
+				R value = type.getValue(s);
+				if (value != null)
+					values.add(value);
+			}
+			
+			if (values.isEmpty())
+				return (t) -> false;
+			
+			if (values.size() == 1) {
+				R value = values.get(0);
+				return (t) -> test.test(t, value);
+			}
+			
+			return (t) -> {
+				for (R value : values)
+					if (test.test(t, value))
+						return true;
+				
+				return false;
+			};
+		});
+	}
+	
+	/**
+	 * Is an argument with the given name registered?
+	 * 
+	 * @param name
+	 *            The name of the argument
+	 * @return {@code true} if the argument is registered.
+	 */
+	public boolean isRegistered(String name) {
+		return _compilers.containsKey(name);
+	}
+	
+	/**
+	 * Compile the checks for every registered argument of the given selector, in the order of {@link Selector#getArgs()}.
+	 * 
+	 * @param selector
+	 *            The selector
+	 * @return The checks.
+	 */
+	protected List<SelectorPlan.Check<T>> compileArgs(Selector selector) {
+		List<SelectorPlan.Check<T>> checks = new ArrayList<SelectorPlan.Check<T>>();
+		for (SelectorArgument arg : selector.getArgs()) {
+			ArgumentCompiler<T> compiler = _compilers.get(arg.getName());
+			if (compiler == null)
+				continue;
+			
+			Predicate<T> test = compiler.compile(arg);
+			if (test == null)
+				continue;
+			
+			Double cost = _costs.get(arg.getName());
+			checks.add(new SelectorPlan.Check<T>(arg.getName(), test, cost == null ? compiler.getCost(arg) : cost));
+		}
+		return checks;
+	}
+	
+	/**
+	 * Compile the given selector. The returned Predicate does not depend on the selector, so the selector may be modified afterwards.
+	 * 
+	 * @param selector
+	 *            The selector
+	 * @return A Predicate that tests if a candidate is selected by the selector.
+	 */
+	public Predicate<T> compile(Selector selector) {
+		List<SelectorPlan.Check<T>> checks = compileArgs(selector);
+		if (checks.isEmpty())
+			return (t) -> true;
+		
+		if (checks.size() == 1)
+			return checks.get(0).getTest();
+		
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Predicate<T>[] array = new Predicate[checks.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = checks.get(i).getTest();
+		return (t) -> {
+			for (Predicate<T> p : array)
+				if (!p.test(t))
+					return false;
+			
+			return true;
+		};
+	}
+	
+	/**
+	 * Compile the given selector into a {@link SelectorPlan}, which reorders the argument checks by their cost and how often they pass.
+	 * Unlike {@link #compile(Selector)}, the checks do not run in the order of {@link Selector#getArgs()}.
+	 * 
+	 * @param selector
+	 *            The selector
+	 * @return The plan.
+	 */
+	public SelectorPlan<T> plan(Selector selector) {
+		return new SelectorPlan<T>(compileArgs(selector));
+	}
+	
+	/**
+	 * Get all candidates in the given list that are selected by the given selector.
+	 * 
+	 * @param selector
+	 *            The selector
+	 * @param candidates
+	 *            The candidates
+	 * @return The selected candidates.
+	 */
+	public List<T> select(Selector selector, List<T> candidates) {
+		Predicate<T> p = compile(selector);
+		List<T> selected = new ArrayList<T>();
+		for (T t : candidates)
+			if (p.test(t))
+				selected.add(t);
+		
+		return selected;
+	}
+	
+	private static class AttributeCompiler<T> implements ArgumentCompiler<T> {
+		
+		// inputs from which all inputs are tested in one pass, by a LenientPatternSet
+		private static final int PATTERN_SET_THRESHOLD = 8;
+		
+		private Function<? super T, String> _extractor;
+		private boolean _globs;
+		
+		AttributeCompiler(Function<? super T, String> extractor, boolean globs) {
+			_extractor = extractor;
+			_globs = globs;
+		}
+		
+		@Override
+		public Predicate<T> compile(SelectorArgument arg) {
+			String[] input = arg.getInput();
+			if (input == null || input.length == 0)
+				return null;
+			
+			if (input.length == 1) {
+				LenientMatcher m = LenientMatcher.compile(input[0], _globs);
+				return (t) -> m.matches(_extractor.apply(t));
+			}
+			
+			if (input.length >= PATTERN_SET_THRESHOLD) {
+				LenientPatternSet set = LenientPatternSet.compile(Arrays.asList(input), _globs);
+				return (t) -> set.matchesAny(_extractor.apply(t));
+			}
+			
+			LenientMatcher[] matchers = new LenientMatcher[input.length];
+			for (int i = 0; i < input.length; i++)
+				matchers[i] = LenientMatcher.compile(input[i], _globs);
+			return (t) -> {
+				String value = _extractor.apply(t);
+				for (LenientMatcher m : matchers)
+					if (m.matches(value))
+						return true;
+				
+				return false;
+			};
+		}
+		
+		@Override
+		public double getCost(SelectorArgument arg) {
+			String[] input = arg.getInput();
+			if (input == null)
+				return 1;
+			
+			double cost = 1; // the extractor
+			for (String s : input)
+				cost += cost(LenientMatcher.compile(s, _globs));
+			return cost;
+		}
+		
+		private static double cost(LenientMatcher m) {
+			switch (m.getOperator()) {
+				case CONTAINS:
+				case GLOB:
+					return 2 + m.getPattern().length() / 8.0; // scans the whole candidate
+				case ENDS_WITH:
+				case STARTS_WITH:
+				case EQUALS:
+					return 1.5; // compares case-insensitively
+				default:
+					return 1;
+			}
+		}
+		
+	}
+	
+}
@@ -0,0 +1,334 @@
+package info.malignantshadow.api.util.selectors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import info.malignantshadow.api.util.LenientMatcher;
+import info.malignantshadow.api.util.StringUtil;
+
+/**
+ * Holds a set of candidates and indexes some of their attributes, so that selector lookups only need to test the candidates that can
+ * match instead of all of them.
+ * 
+ * <p>
+ * An indexed attribute can answer arguments whose inputs all use one of the following {@link LenientMatcher.Operator operators}:
+ * </p>
+ * <ul>
+ * <li>No prefix (equal, case-insensitive) - answered by a hash index of the case-folded values</li>
+ * <li>{@code =} (equal) - answered by a sorted index of the values</li>
+ * <li>{@code ^} (starts with, case-insensitive) - answered by a sorted index of the case-folded values</li>
+ * <li>{@code %} (starts with) - answered by a sorted index of the values</li>
+ * <li>{@code <} and {@code >} - answered by a sorted index of the values</li>
+ * </ul>
+ * <p>
+ * If a selector has more than one argument that can be answered, the one with the fewest candidates is used. The candidates are then
+ * tested against the compiled selector as usual, so the result is the same as testing every candidate. Results keep the order the
+ * candidates were added in.
+ * </p>
+ * 
+ * <p>
+ * The indexes are only kept up to date through {@link #add(Object)}, {@link #remove(Object)} and {@link #update(Object)}. Call
+ * {@link #update(Object)} whenever an indexed attribute of a candidate changes. This class is not thread-safe.
+ * </p>
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ * @param <T>
+ *            The type of candidate
+ */
+public class SelectorIndex<T> {
+	
+	private SelectorEngine<T> _engine;
+	private Map<String, AttributeIndex<T>> _indexes;
+	private Map<T, Long> _candidates;
+	private long _nextId;
+	
+	/**
+	 * Create a new empty index that compiles selectors with the given engine.
+	 * 
+	 * @param engine
+	 *            The engine
+	 */
+	public SelectorIndex(SelectorEngine<T> engine) {
+		_engine = engine;
+		_indexes = new HashMap<String, AttributeIndex<T>>();
+		_candidates = new LinkedHashMap<T, Long>();
+	}
+	
+	/**
+	 * Index the given attribute. The attribute is also {@link SelectorEngine#withAttribute(String, Function) registered} with the engine of
+	 * this index. Candidates that were already added are indexed immediately.
+	 * 
+	 * @param name
+	 *            The name of the argument
+	 * @param extractor
+	 *            A Function that takes in a candidate and returns the attribute to index
+	 * @return this
+	 */
+	public SelectorIndex<T> index(String name, Function<? super T, String> extractor) {
+		_engine.withAttribute(name, extractor);
+		AttributeIndex<T> index = new AttributeIndex<T>(extractor);
+		for (T t : _candidates.keySet())
+			index.add(t);
+		_indexes.put(name, index);
+		return this;
+	}
+	
+	/**
+	 * Add a candidate to this index.
+	 * 
+	 * @param t
+	 *            The candidate
+	 * @return {@code true} if the candidate was added, {@code false} if it was already present.
+	 */
+	public boolean add(T t) {
+		if (_candidates.containsKey(t))
+			return false;
+		
+		_candidates.put(t, _nextId++);
+		for (AttributeIndex<T> index : _indexes.values())
+			index.add(t);
+		return true;
+	}
+	
+	/**
+	 * Remove a candidate from this index.
+	 * 
+	 * @param t
+	 *            The candidate
+	 * @return {@code true} if the candidate was removed.
+	 */
+	public boolean remove(T t) {
+		if (_candidates.remove(t) == null)
+			return false;
+		
+		for (AttributeIndex<T> index : _indexes.values())
+			index.remove(t);
+		return true;
+	}
+	
+	/**
+	 * Re-index the attributes of the given candidate. This must be called after an indexed attribute of the candidate changes.
+	 * 
+	 * @param t
+	 *            The candidate
+	 * @return {@code true} if the candidate is part of this index.
+	 */
+	public boolean update(T t) {
+		if (!_candidates.containsKey(t))
+			return false;
+		
+		for (AttributeIndex<T> index : _indexes.values())
+			index.update(t);
+		return true;
+	}
+	
+	/**
+	 * Does this index contain the given candidate?
+	 * 
+	 * @param t
+	 *            The candidate
+	 * @return {@code true} if the candidate was added.
+	 */
+	public boolean contains(T t) {
+		return _candidates.containsKey(t);
+	}
+	
+	/**
+	 * Get the amount of candidates in this index.
+	 * 
+	 * @return The size.
+	 */
+	public int size() {
+		return _candidates.size();
+	}
+	
+	/**
+	 * Get all candidates in this index, in the order they were added.
+	 * 
+	 * @return The candidates.
+	 */
+	public Collection<T> getAll() {
+		return Collections.unmodifiableSet(_candidates.keySet());
+	}
+	
+	/**
+	 * Get the candidates that might be selected by the given selector, in the order they were added. If no argument of the selector can be
+	 * answered by an index, all candidates are returned.
+	 * 
+	 * @param selector
+	 *            The selector
+	 * @return The candidates.
+	 */
+	public List<T> getCandidates(Selector selector) {
+		Set<T> best = null;
+		for (SelectorArgument arg : selector.getArgs()) {
+			AttributeIndex<T> index = _indexes.get(arg.getName());
+			if (index == null)
+				continue;
+			
+			Set<T> found = index.lookup(arg.getInput());
+			if (found != null && (best == null || found.size() < best.size()))
+				best = found;
+			if (best != null && best.isEmpty())
+				break;
+		}
+		
+		if (best == null)
+			return new ArrayList<T>(_candidates.keySet());
+		
+		List<T> list = new ArrayList<T>(best);
+		list.sort(Comparator.comparingLong(_candidates::get));
+		return list;
+	}
+	
+	/**
+	 * Get the candidates selected by the given selector, in the order they were added.
+	 * 
+	 * @param selector
+	 *            The selector
+	 * @return The selected candidates.
+	 */
+	public List<T> select(Selector selector) {
+		Predicate<T> p = _engine.compile(selector);
+		List<T> selected = new ArrayList<T>();
+		for (T t : getCandidates(selector))
+			if (p.test(t))
+				selected.add(t);
+		
+		return selected;
+	}
+	
+	private static class AttributeIndex<T> {
+		
+		private Function<? super T, String> _extractor;
+		private Map<T, String> _values;
+		private Map<String, Set<T>> _folded;
+		private TreeMap<String, Set<T>> _sorted, _sortedFolded;
+		
+		AttributeIndex(Function<? super T, String> extractor) {
+			_extractor = extractor;
+			_values = new HashMap<T, String>();
+			_folded = new HashMap<String, Set<T>>();
+			_sorted = new TreeMap<String, Set<T>>();
+			_sortedFolded = new TreeMap<String, Set<T>>();
+		}
+		
+		private static <T> void put(Map<String, Set<T>> map, String key, T t) {
+			Set<T> set = map.get(key);
+			if (set == null)
+				map.put(key, set = new HashSet<T>());
+			set.add(t);
+		}
+		
+		private static <T> void remove(Map<String, Set<T>> map, String key, T t) {
+			Set<T> set = map.get(key);
+			if (set != null && set.remove(t) && set.isEmpty())
+				map.remove(key);
+		}
+		
+		void add(T t) {
+			String value = _extractor.apply(t);
+			if (value == null) //null never matches a non-null test string
+				return;
+			
+			String folded = StringUtil.foldCase(value);
+			_values.put(t, value);
+			put(_folded, folded, t);
+			put(_sorted, value, t);
+			put(_sortedFolded, folded, t);
+		}
+		
+		void remove(T t) {
+			String value = _values.remove(t);
+			if (value == null)
+				return;
+			
+			String folded = StringUtil.foldCase(value);
+			remove(_folded, folded, t);
+			remove(_sorted, value, t);
+			remove(_sortedFolded, folded, t);
+		}
+		
+		void update(T t) {
+			String value = _extractor.apply(t);
+			String old = _values.get(t);
+			if (value == null ? old == null : value.equals(old))
+				return;
+			
+			remove(t);
+			add(t);
+		}
+		
+		private static <T> void addPrefixed(NavigableMap<String, Set<T>> map, String prefix, Set<T> into) {
+			for (Map.Entry<String, Set<T>> e : map.tailMap(prefix, true).entrySet()) {
+				if (!e.getKey().startsWith(prefix))
+					break;
+				into.addAll(e.getValue());
+			}
+		}
+		
+		private static <T> void addAll(Map<String, Set<T>> map, Set<T> into) {
+			for (Set<T> set : map.values())
+				into.addAll(set);
+		}
+		
+		// returns null if the input cannot be answered by this index
+		Set<T> lookup(String[] input) {
+			if (input == null || input.length == 0)
+				return null;
+			
+			Set<T> found = new HashSet<T>();
+			for (String s : input) {
+				LenientMatcher m = LenientMatcher.compile(s);
+				if (m.isNegated())
+					return null;
+				
+				String pattern = m.getPattern();
+				switch (m.getOperator()) {
+					case EQUALS: {
+						Set<T> set = _folded.get(StringUtil.foldCase(pattern));
+						if (set != null)
+							found.addAll(set);
+						break;
+					}
+					case EQUALS_STRICT: {
+						Set<T> set = _sorted.get(pattern);
+						if (set != null)
+							found.addAll(set);
+						break;
+					}
+					case STARTS_WITH:
+						addPrefixed(_sortedFolded, StringUtil.foldCase(pattern), found);
+						break;
+					case STARTS_WITH_STRICT:
+						addPrefixed(_sorted, pattern, found);
+						break;
+					case GREATER: //the pattern is greater than the value
+						addAll(_sorted.headMap(pattern, false), found);
+						break;
+					case LESS: //the pattern is less than the value
+						addAll(_sorted.tailMap(pattern, false), found);
+						break;
+					default:
+						return null;
+				}
+			}
+			return found;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,279 @@
+package info.malignantshadow.api.util.selectors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * A compiled selector that orders its argument checks so that cheap, selective checks run first. Each check has a cost estimate; the
+ * selectivity of each check is sampled while the plan is used, and the checks are reordered as the statistics change.
+ * 
+ * <p>
+ * Checks are ordered by {@code cost / (1 - selectivity)}, where the selectivity is the fraction of candidates that pass the check. Roughly one
+ * in {@link #getSampleRate() sampleRate} tests runs every check (instead of stopping at the first that fails) to record how often each one
+ * passes, and the plan is reordered after every {@link #getReplanInterval() replanInterval} samples.
+ * </p>
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ * @param <T>
+ *            The type of candidate
+ */
+public class SelectorPlan<T> implements Predicate<T> {
+	
+	/**
+	 * The default amount of tests per sample.
+	 */
+	public static final int DEFAULT_SAMPLE_RATE = 64;
+	
+	/**
+	 * The default amount of samples between reordering the checks.
+	 */
+	public static final int DEFAULT_REPLAN_INTERVAL = 256;
+	
+	/**
+	 * Represents a single argument check within a plan.
+	 * 
+	 * @author MalignantShadow (Caleb Downs)
+	 *
+	 * @param <T>
+	 *            The type of candidate
+	 */
+	public static class Check<T> {
+		
+		private String _name;
+		private Predicate<T> _test;
+		private double _cost;
+		private LongAdder _tested, _passed;
+		
+		/**
+		 * Create a new check.
+		 * 
+		 * @param name
+		 *            The name of the argument
+		 * @param test
+		 *            The test
+		 * @param cost
+		 *            The estimated cost of the test, relative to other checks
+		 */
+		public Check(String name, Predicate<T> test, double cost) {
+			_name = name;
+			_test = test;
+			_cost = Math.max(cost, Double.MIN_VALUE);
+			_tested = new LongAdder();
+			_passed = new LongAdder();
+		}
+		
+		/**
+		 * Get the name of the argument this check was compiled from.
+		 * 
+		 * @return The name.
+		 */
+		public String getName() {
+			return _name;
+		}
+		
+		/**
+		 * Get the test of this check.
+		 * 
+		 * @return The test.
+		 */
+		public Predicate<T> getTest() {
+			return _test;
+		}
+		
+		/**
+		 * Get the estimated cost of this check.
+		 * 
+		 * @return The cost.
+		 */
+		public double getCost() {
+			return _cost;
+		}
+		
+		/**
+		 * Get the amount of sampled candidates this check has tested.
+		 * 
+		 * @return The amount of samples.
+		 */
+		public long getSamples() {
+			return _tested.sum();
+		}
+		
+		/**
+		 * Get the estimated fraction of candidates that pass this check. Before any samples are taken, this is {@code 0.5}.
+		 * 
+		 * @return The selectivity, between {@code 0} and {@code 1}.
+		 */
+		public double getSelectivity() {
+			// Laplace smoothing keeps a check that has always passed (or failed) so far from being pinned to the very end (or start)
+			return (_passed.sum() + 1.0) / (_tested.sum() + 2.0);
+		}
+		
+		/**
+		 * Get the rank of this check. Checks with a lower rank run first.
+		 * 
+		 * @return The rank.
+		 */
+		public double getRank() {
+			return _cost / (1 - getSelectivity());
+		}
+		
+		private boolean sample(T t) {
+			boolean passed = _test.test(t);
+			_tested.increment();
+			if (passed)
+				_passed.increment();
+			return passed;
+		}
+		
+		@Override
+		public String toString() {
+			return String.format("%s (cost=%.2f, selectivity=%.3f, samples=%d, rank=%.2f)", _name, _cost, getSelectivity(), getSamples(),
+				getRank());
+		}
+		
+	}
+	
+	private Check<T>[] _checks;
+	private volatile Check<T>[] _order;
+	private int _sampleMask, _replanInterval;
+	private LongAdder _samples;
+	private volatile long _nextReplan;
+	
+	/**
+	 * Create a new plan with the given checks, using the {@link #DEFAULT_SAMPLE_RATE default sample rate} and
+	 * {@link #DEFAULT_REPLAN_INTERVAL default replan interval}.
+	 * 
+	 * @param checks
+	 *            The checks
+	 */
+	public SelectorPlan(List<Check<T>> checks) {
+		this(checks, DEFAULT_SAMPLE_RATE, DEFAULT_REPLAN_INTERVAL);
+	}
+	
+	/**
+	 * Create a new plan with the given checks.
+	 * 
+	 * @param checks
+	 *            The checks
+	 * @param sampleRate
+	 *            The amount of tests per sample, rounded up to a power of two. {@code 1} samples every test.
+	 * @param replanInterval
+	 *            The amount of samples between reordering the checks
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public SelectorPlan(List<Check<T>> checks, int sampleRate, int replanInterval) {
+		_checks = checks.toArray(new Check[checks.size()]);
+		_sampleMask = sampleRate <= 1 ? 0 : Integer.highestOneBit(sampleRate - 1) * 2 - 1;
+		_replanInterval = Math.max(1, replanInterval);
+		_samples = new LongAdder();
+		_nextReplan = _replanInterval;
+		_order = ordered();
+	}
+	
+	private Check<T>[] ordered() {
+		// the statistics keep changing while other threads test candidates, so sort by a snapshot of the ranks
+		double[] ranks = new double[_checks.length];
+		Integer[] indexes = new Integer[_checks.length];
+		for (int i = 0; i < ranks.length; i++) {
+			ranks[i] = _checks[i].getRank();
+			indexes[i] = i;
+		}
+		Arrays.sort(indexes, (a, b) -> Double.compare(ranks[a], ranks[b])); // stable, so ties keep the selector's order
+		
+		Check<T>[] order = _checks.clone();
+		for (int i = 0; i < order.length; i++)
+			order[i] = _checks[indexes[i]];
+		return order;
+	}
+	
+	/**
+	 * Get the amount of tests per sample.
+	 * 
+	 * @return The sample rate.
+	 */
+	public int getSampleRate() {
+		return _sampleMask + 1;
+	}
+	
+	/**
+	 * Get the amount of samples between reordering the checks.
+	 * 
+	 * @return The replan interval.
+	 */
+	public int getReplanInterval() {
+		return _replanInterval;
+	}
+	
+	/**
+	 * Get the checks of this plan, in the order they currently run.
+	 * 
+	 * @return The checks.
+	 */
+	public List<Check<T>> getChecks() {
+		return Arrays.asList(_order.clone());
+	}
+	
+	/**
+	 * Reorder the checks of this plan using the statistics gathered so far.
+	 */
+	public synchronized void replan() {
+		_order = ordered();
+	}
+	
+	@Override
+	public boolean test(T t) {
+		if (_sampleMask == 0 || (ThreadLocalRandom.current().nextInt() & _sampleMask) == 0)
+			return sample(t);
+		
+		for (Check<T> c : _order)
+			if (!c._test.test(t))
+				return false;
+		
+		return true;
+	}
+	
+	private boolean sample(T t) {
+		boolean passed = true;
+		for (Check<T> c : _checks)
+			passed &= c.sample(t);
+		
+		_samples.increment();
+		if (_samples.sum() >= _nextReplan) {
+			synchronized (this) {
+				long samples = _samples.sum();
+				if (samples >= _nextReplan) {
+					_nextReplan = samples + _replanInterval;
+					replan();
+				}
+			}
+		}
+		
+		return passed;
+	}
+	
+	/**
+	 * Describe the current order of the checks and the statistics it was chosen from.
+	 * 
+	 * @return The description.
+	 */
+	public String explain() {
+		Check<T>[] order = _order;
+		List<String> lines = new ArrayList<String>(order.length + 1);
+		lines.add(String.format("SelectorPlan (%d checks, %d samples, 1 in %d tests sampled)", order.length, _samples.sum(), getSampleRate()));
+		for (int i = 0; i < order.length; i++)
+			lines.add((i + 1) + ". " + order[i]);
+		
+		return String.join("\n", lines);
+	}
+	
+	@Override
+	public String toString() {
+		return explain();
+	}
+	
+}
@@ -0,0 +1,322 @@
+package info.malignantshadow.api.util.selectors;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import info.malignantshadow.api.util.arguments.ArgumentTypes;
+
+/**
+ * Matches selectors against large lists of candidates, splitting the work across a {@link ForkJoinPool}. Lists smaller than the
+ * {@link #withThreshold(int) threshold} are searched on the calling thread, so they don't pay for forking.
+ * 
+ * <p>
+ * If the selector has a limit argument (by default {@code c}, e.g. {@code @e[type=zombie,c=5]}), the search stops as soon as enough
+ * candidates are found. In ordered mode (the default) the result is always the first matches in list order; otherwise any matches may be
+ * returned, which lets workers stop sooner.
+ * </p>
+ * 
+ * @author MalignantShadow (Caleb Downs)
+ *
+ * @param <T>
+ *            The type of candidate
+ */
+public class SelectorSearch<T> {
+	
+	/**
+	 * The default size a list must have before it is searched in parallel.
+	 */
+	public static final int DEFAULT_THRESHOLD = 4096;
+	
+	/**
+	 * The default name of the argument that limits the amount of results.
+	 */
+	public static final String DEFAULT_LIMIT_ARGUMENT = "c";
+	
+	private SelectorEngine<T> _engine;
+	private String _limitArg;
+	private int _threshold;
+	private boolean _ordered;
+	private ForkJoinPool _pool;
+	
+	/**
+	 * Create a new search that compiles selectors with the given engine.
+	 * 
+	 * @param engine
+	 *            The engine
+	 */
+	public SelectorSearch(SelectorEngine<T> engine) {
+		_engine = engine;
+		_limitArg = DEFAULT_LIMIT_ARGUMENT;
+		_threshold = DEFAULT_THRESHOLD;
+		_ordered = true;
+		_pool = ForkJoinPool.commonPool();
+	}
+	
+	/**
+	 * Set the name of the argument that limits the amount of results. Its first input is read with {@link ArgumentTypes#INT}, values less
+	 * than {@code 1} mean there is no limit.
+	 * 
+	 * @param name
+	 *            The name of the argument, or {@code null} if selectors have no limit
+	 * @return this
+	 */
+	public SelectorSearch<T> withLimitArgument(String name) {
+		_limitArg = name;
+		return this;
+	}
+	
+	/**
+	 * Set the size a list must have before it is searched in parallel.
+	 * 
+	 * @param threshold
+	 *            The threshold
+	 * @return this
+	 */
+	public SelectorSearch<T> withThreshold(int threshold) {
+		_threshold = Math.max(1, threshold);
+		return this;
+	}
+	
+	/**
+	 * Set whether results keep the order of the candidate list.
+	 * 
+	 * @param ordered
+	 *            {@code true} if the results should be ordered
+	 * @return this
+	 */
+	public SelectorSearch<T> ordered(boolean ordered) {
+		_ordered = ordered;
+		return this;
+	}
+	
+	/**
+	 * Set the pool parallel searches are run in. By default, the {@link ForkJoinPool#commonPool() common pool} is used.
+	 * 
+	 * @param pool
+	 *            The pool
+	 * @return this
+	 */
+	public SelectorSearch<T> withPool(ForkJoinPool pool) {
+		_pool = pool;
+		return this;
+	}
+	
+	/**
+	 * Get the limit given by the given selector.
+	 * 
+	 * @param selector
+	 *            The selector
+	 * @return The limit, or {@code -1} if there is no limit.
+	 */
+	public int getLimit(Selector selector) {
+		if (_limitArg == null)
+			return -1;
+		
+		Integer limit = selector.getOne(_limitArg, ArgumentTypes.INT);
+		return limit == null || limit < 1 ? -1 : limit;
+	}
+	
+	/**
+	 * Get the candidates selected by the given selector.
+	 * 
+	 * @param selector
+	 *            The selector
+	 * @param candidates
+	 *            The candidates
+	 * @return The selected candidates.
+	 */
+	public List<T> search(Selector selector, List<? extends T> candidates) {
+		return search(_engine.compile(selector), candidates, getLimit(selector));
+	}
+	
+	/**
+	 * Get a maximum of {@code limit} candidates that match the given predicate.
+	 * 
+	 * @param p
+	 *            The predicate
+	 * @param candidates
+	 *            The candidates
+	 * @param limit
+	 *            The maximum amount of results, or a value less than {@code 1} for no limit
+	 * @return The matching candidates.
+	 */
+	public List<T> search(Predicate<? super T> p, List<? extends T> candidates, int limit) {
+		if (candidates == null || candidates.isEmpty())
+			return new ArrayList<T>();
+		
+		int max = limit < 1 ? Integer.MAX_VALUE : limit;
+		List<? extends T> list = candidates instanceof RandomAccess ? candidates : new ArrayList<T>(candidates);
+		if (list.size() < _threshold)
+			return scan(p, list, 0, list.size(), max);
+		
+		int leaf = Math.max(_threshold / 4, list.size() / (_pool.getParallelism() * 8));
+		Progress<T> progress = new Progress<T>(list.size(), leaf, max, _ordered, _pool.getParallelism());
+		_pool.invoke(new Search<T>(p, list, progress, false));
+		
+		List<T> found = new ArrayList<T>();
+		for (List<T> leafFound : progress._found)
+			if (leafFound != null)
+				found.addAll(leafFound);
+		return found.size() > max ? new ArrayList<T>(found.subList(0, max)) : found;
+	}
+	
+	private static <T> List<T> scan(Predicate<? super T> p, List<? extends T> list, int from, int to, int max) {
+		List<T> found = new ArrayList<T>();
+		for (int i = from; i < to && found.size() < max; i++) {
+			T t = list.get(i);
+			if (p.test(t))
+				found.add(t);
+		}
+		return found;
+	}
+	
+	// the state shared by the workers of one search
+	private static class Progress<T> {
+		
+		private int _leaf, _max; // the list is split into leaves of _leaf candidates
+		private int _window; // ordered: how many leaves past the finished ones may be searched at once
+		private boolean _ordered;
+		private int _next; // the next leaf to search
+		private List<T>[] _found; // the matches of each leaf that was searched
+		
+		// ordered: no match at or after this index is needed, because enough matches were found before it
+		// unordered: the amount of matches that may still be added
+		private AtomicInteger _bound;
+		
+		// ordered: the amount of matches each leaf found, or -1 if it has not finished, and how many leaves at the start of the list have
+		// finished together with the amount of matches they found
+		private int[] _counts;
+		private int _finished, _total;
+		
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Progress(int size, int leaf, int max, boolean ordered, int parallelism) {
+			_leaf = leaf;
+			_max = max;
+			_window = 2 * parallelism;
+			_ordered = ordered;
+			_found = new List[(size + leaf - 1) / leaf];
+			_bound = new AtomicInteger(ordered ? size : max);
+			_counts = new int[_found.length];
+			Arrays.fill(_counts, -1);
+		}
+		
+		boolean done(int index) {
+			return _ordered ? index >= _bound.get() : _bound.get() <= 0;
+		}
+		
+		void lowerBound(int index) {
+			int bound;
+			while ((bound = _bound.get()) > index && !_bound.compareAndSet(bound, index))
+				;
+		}
+		
+		// claim the next leaf to search, or return -1 if there is none. An ordered search with a limit does not search too far past the
+		// leaves that have finished, since their matches may already be enough, so a worker that gets too far ahead waits for them. Workers
+		// only wait between leaves, so the leaf at the start of the window is always being searched by a worker that is not waiting.
+		synchronized int claim() {
+			while (true) {
+				int leaf = _next;
+				if (leaf >= _found.length || done(leaf * _leaf))
+					return -1;
+				
+				if (!_ordered || _max == Integer.MAX_VALUE || leaf - _finished < _window) {
+					_next++;
+					return leaf;
+				}
+				
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return -1;
+				}
+			}
+		}
+		
+		// record the matches of a finished leaf; once the finished leaves at the start of the list found enough matches together, nothing
+		// after them is needed
+		synchronized void finish(int leaf, int count) {
+			_counts[leaf] = count;
+			while (_finished < _counts.length && _counts[_finished] >= 0) {
+				_total += _counts[_finished++];
+				if (_total >= _max) {
+					lowerBound(_finished * _leaf);
+					_finished = _counts.length;
+				}
+			}
+			notifyAll(); // the window may have moved, or the search may be done
+		}
+		
+	}
+	
+	// a worker that searches leaves in list order until none are left or enough matches are found; the first task starts the workers
+	private static class Search<T> extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private Predicate<? super T> _p;
+		private List<? extends T> _list;
+		private Progress<T> _progress;
+		private boolean _worker;
+		
+		Search(Predicate<? super T> p, List<? extends T> list, Progress<T> progress, boolean worker) {
+			_p = p;
+			_list = list;
+			_progress = progress;
+			_worker = worker;
+		}
+		
+		@Override
+		protected void compute() {
+			if (!_worker) {
+				List<Search<T>> workers = new ArrayList<Search<T>>();
+				for (int i = Math.min(_progress._found.length, getPool().getParallelism()); i > 0; i--)
+					workers.add(new Search<T>(_p, _list, _progress, true));
+				invokeAll(workers);
+				return;
+			}
+			
+			// leaves are claimed in list order, so an ordered search finds its first matches before it searches further
+			int leaf;
+			while ((leaf = _progress.claim()) >= 0) {
+				int from = leaf * _progress._leaf, to = Math.min(_list.size(), from + _progress._leaf);
+				_progress._found[leaf] = _progress._ordered ? scanOrdered(leaf, from, to) : scanUnordered(from, to);
+			}
+		}
+		
+		private List<T> scanOrdered(int leaf, int from, int to) {
+			List<T> found = new ArrayList<T>();
+			for (int i = from; i < to && !_progress.done(i); i++) {
+				T t = _list.get(i);
+				if (!_p.test(t))
+					continue;
+				
+				found.add(t);
+				if (found.size() == _progress._max) {
+					_progress.lowerBound(i + 1);
+					break;
+				}
+			}
+			_progress.finish(leaf, found.size());
+			return found;
+		}
+		
+		private List<T> scanUnordered(int from, int to) {
+			List<T> found = new ArrayList<T>();
+			for (int i = from; i < to && !_progress.done(i); i++) {
+				T t = _list.get(i);
+				if (_p.test(t) && _progress._bound.getAndDecrement() > 0)
+					found.add(t);
+			}
+			return found;
+		}
+		
+	}
+	
+}